@@ -0,0 +1,50 @@
+package nl.specialisterren.fitnesse.benchmark;
+
+import nl.specialisterren.fitnesse.fixture.slim.CalendarFixture;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@Fork(1)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+public class CalendarFixtureBenchmark {
+    private final CalendarFixture fixture = new CalendarFixture();
+
+    @Benchmark
+    public String convertDatetimeFromTo() {
+        return fixture.convertDatetimeFromTo("23-10-2020 14:05", "dd-MM-yyyy HH:mm", "yyyy-MM-dd'T'HH:mm:ss");
+    }
+
+    @Benchmark
+    public long convertDatetimeToEpoch() {
+        return fixture.convertDatetimeToEpoch("23-10-2020 14:05");
+    }
+
+    @Benchmark
+    public String convertEpochToDatetime() {
+        return fixture.convertEpochToDatetime(1603454700000L);
+    }
+
+    @Benchmark
+    public String convertDatetimeToIso() {
+        return fixture.convertDatetimeToIso("23-10-2020 14:05");
+    }
+
+    @Benchmark
+    public boolean datetimeIsBetweenAnd() {
+        return fixture.datetimeIsBetweenAnd("23-10-2020 14:05", "1-10-2020 0:00", "1-11-2020 0:00");
+    }
+
+    @Benchmark
+    public String increaseDateWithMinutes() {
+        return fixture.increaseDateWithMinutes("23-10-2020 14:05", 90);
+    }
+}
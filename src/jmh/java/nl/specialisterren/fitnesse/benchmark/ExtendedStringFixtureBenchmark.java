@@ -0,0 +1,35 @@
+package nl.specialisterren.fitnesse.benchmark;
+
+import nl.specialisterren.fitnesse.fixture.slim.ExtendedStringFixture;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@Fork(1)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+public class ExtendedStringFixtureBenchmark {
+    private final ExtendedStringFixture fixture = new ExtendedStringFixture();
+
+    @Benchmark
+    public String extractStringFromUsingGroup() {
+        return fixture.extractStringFromUsingGroup("POW_04596578 (Tegenlicht)", "(\\w+) \\((.+)\\)", 2);
+    }
+
+    @Benchmark
+    public String convertToTimestamp() {
+        return fixture.convertToTimestamp("0:01:25.000");
+    }
+
+    @Benchmark
+    public String convertToTime() {
+        return fixture.convertToTime("P0DT0H1M25.000S");
+    }
+}
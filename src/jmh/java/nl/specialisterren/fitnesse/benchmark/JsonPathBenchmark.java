@@ -0,0 +1,61 @@
+package nl.specialisterren.fitnesse.benchmark;
+
+import nl.specialisterren.fitnesse.fixture.util.StreamingJsonEvaluator;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * JsonPath evaluation by NpoJsonHttpTest over a recorded Frontend API media search response.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@Fork(1)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+public class JsonPathBenchmark {
+    private RecordedNpoJsonHttpFixture fixture;
+    private byte[] payload;
+    private StreamingJsonEvaluator streamingEvaluator;
+
+    @Setup
+    public void setUp() {
+        String body = Payloads.read("payloads/media-search.json");
+        fixture = new RecordedNpoJsonHttpFixture(body);
+        fixture.getFrom(RecordedNpoJsonHttpFixture.URL);
+        payload = body.getBytes(StandardCharsets.UTF_8);
+        streamingEvaluator = new StreamingJsonEvaluator();
+        streamingEvaluator.addPath("items[*].result.broadcasters[0].id", true);
+    }
+
+    @Benchmark
+    public Object singleValue() {
+        return fixture.jsonPath("items[3].result.mid");
+    }
+
+    @Benchmark
+    public Object elementOfJsonPathDefault() {
+        return fixture.elementOfJsonPathDefault(20, "items[*].result.mid", "none");
+    }
+
+    @Benchmark
+    public Object jsonPathValues() {
+        return fixture.jsonPathValues("items[*].result.broadcasters[0].id");
+    }
+
+    @Benchmark
+    public Object streamedValues() throws IOException {
+        streamingEvaluator.evaluate(new ByteArrayInputStream(payload));
+        return streamingEvaluator.getResult("items[*].result.broadcasters[0].id").getValues();
+    }
+}
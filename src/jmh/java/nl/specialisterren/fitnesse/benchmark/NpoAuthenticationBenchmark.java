@@ -0,0 +1,42 @@
+package nl.specialisterren.fitnesse.benchmark;
+
+import nl.specialisterren.fitnesse.fixture.util.NpoRequestSigner;
+import nl.vpro.api.client.frontend.NpoApiAuthentication;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.net.URI;
+import java.util.Map;
+
+/**
+ * Signing of Frontend API requests, as done by NpoJsonHttpTest and NpoXmlHttpTest before every request.
+ * npoApiAuthentication is the API client's implementation, kept as reference for NpoRequestSigner.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@Fork(1)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+public class NpoAuthenticationBenchmark {
+    private static final String URL = "https://rs-test.poms.omroep.nl/v1/api/media/POW_04596578/members?max=10&offset=0&properties=none";
+
+    private final NpoApiAuthentication auth = new NpoApiAuthentication("benchmark-key", "benchmark-secret", "https://poms.example.com/");
+    private final NpoRequestSigner signer = new NpoRequestSigner("benchmark-key", "benchmark-secret", "https://poms.example.com/");
+
+    @Benchmark
+    public Map<String, Object> npoApiAuthentication() throws Exception {
+        return auth.authenticate(new URI(URL));
+    }
+
+    @Benchmark
+    public void npoRequestSigner(Blackhole blackhole) {
+        signer.sign(URL, (name, value) -> blackhole.consume(value));
+    }
+}
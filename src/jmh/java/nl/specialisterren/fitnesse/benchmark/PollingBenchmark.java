@@ -0,0 +1,41 @@
+package nl.specialisterren.fitnesse.benchmark;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Polling by NpoJsonHttpTest#repeatUntilJsonPathOfFirstItemsIsNot over a recorded Frontend API media search
+ * response. The condition never holds (the first item keeps its broadcaster), so each invocation repeats the call
+ * 'polls' times: replaying the recorded response, parsing it and evaluating the path again.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@Fork(1)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+public class PollingBenchmark {
+    @Param({"1", "10"})
+    public int polls;
+
+    private RecordedNpoJsonHttpFixture fixture;
+
+    @Setup
+    public void setUp() {
+        fixture = new RecordedNpoJsonHttpFixture(Payloads.read("payloads/media-search.json"));
+        fixture.getFrom(RecordedNpoJsonHttpFixture.URL);
+        fixture.repeatAtMostTimes(polls);
+    }
+
+    @Benchmark
+    public boolean repeatUntilJsonPathOfFirstItemsIsNot() {
+        return fixture.repeatUntilJsonPathOfFirstItemsIsNot("items[%s].result.broadcasters[0].id", 5, "VPRO");
+    }
+}
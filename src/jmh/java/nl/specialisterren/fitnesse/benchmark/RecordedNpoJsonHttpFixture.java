@@ -0,0 +1,40 @@
+package nl.specialisterren.fitnesse.benchmark;
+
+import nl.hsac.fitnesse.fixture.util.HttpResponse;
+import nl.specialisterren.fitnesse.fixture.slim.NpoJsonHttpTest;
+import nl.specialisterren.fitnesse.fixture.util.HttpRecorder;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+
+/**
+ * NpoJsonHttpTest replaying a recorded response, instead of receiving it from the API. Requests (including the
+ * repeats of the repeat until methods) go through the fixture's request pipeline, without network or server latency.
+ * The class is not named *Test, so surefire does not pick it up when the benchmarks are added as test sources.
+ */
+public class RecordedNpoJsonHttpFixture extends NpoJsonHttpTest {
+    public static final String URL = "https://poms.example.com/v1/api/media/";
+
+    /**
+     * Records body as the response to a GET of URL (in a temporary recording directory), and replays from it.
+     */
+    public RecordedNpoJsonHttpFixture(String body) {
+        super("benchmark-key", "benchmark-secret", "https://poms.example.com/");
+        setRepeatIntervalToMilliseconds(0);
+        try {
+            System.setProperty("httpRecording.dir",
+                    Files.createTempDirectory("benchmark-recordings").toFile().getAbsolutePath());
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        HttpResponse response = getResponse();
+        response.setStatusCode(200);
+        response.getResponseHeaders().put("Content-Type", "application/json");
+        response.setResponse(body);
+        HttpRecorder recorder = requestPipeline().getRecorder();
+        recorder.setMode(HttpRecorder.Mode.RECORD, "media");
+        recorder.record("GET", createUrlWithParams(URL), null, response);
+        replayResponsesFrom("media");
+    }
+}
@@ -0,0 +1,52 @@
+package nl.specialisterren.fitnesse.benchmark;
+
+import nl.specialisterren.fitnesse.fixture.slim.web.SortDateList;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.List;
+
+/**
+ * Parsing of the HTML list produced by ExtendedBrowserTest#listAllSortDatesOf, as used on the search result pages
+ * (SortDateList, which ExtendedBrowserTest's sortDatesOf and datesAreDate delegate to).
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@Fork(1)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+public class SortDatesBenchmark {
+    @Param({"25", "250"})
+    public int rows;
+
+    private String list;
+
+    @Setup
+    public void setUp() {
+        StringBuilder sb = new StringBuilder("<div><ul>");
+        for (int i = 0; i < rows; i++) {
+            sb.append("<li>")
+                    .append(String.format("%02d-%02d-2020 %02d:%02d", 1 + i % 28, 1 + i % 12, i % 24, i % 60))
+                    .append("</li>");
+        }
+        list = sb.append("</ul></div>").toString();
+    }
+
+    @Benchmark
+    public List<String> sortDatesOf() {
+        return SortDateList.sortDatesOf(list);
+    }
+
+    @Benchmark
+    public List<Boolean> datesAreDate() {
+        return SortDateList.datesAreDate(list, ">=", "01-01-2020");
+    }
+}
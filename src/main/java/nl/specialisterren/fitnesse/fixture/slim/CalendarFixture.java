@@ -1,122 +1,166 @@
 package nl.specialisterren.fitnesse.fixture.slim;
 
-import java.text.ParseException;
-import java.text.SimpleDateFormat;
-import java.util.Date;
-import java.util.TimeZone;
-import java.util.Calendar;
-import java.util.Locale;
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
+import nl.hsac.fitnesse.fixture.slim.SlimFixtureException;
+import nl.specialisterren.fitnesse.fixture.util.DateTimeFormatterCache;
+
+import java.time.Instant;
+import java.time.LocalDate;
 import java.time.LocalDateTime;
+import java.time.LocalTime;
+import java.time.ZoneId;
 import java.time.ZonedDateTime;
 import java.time.format.DateTimeFormatter;
-import java.time.ZoneId;
-
+import java.time.format.DateTimeParseException;
+import java.time.temporal.TemporalAccessor;
+import java.time.temporal.TemporalQueries;
+import java.util.ArrayList;
+import java.util.List;
 
+/**
+ * Date and time conversions and comparisons, using Europe/Amsterdam as time zone.
+ * Formatters are cached by pattern and all state is immutable, so this fixture can be used from parallel threads.
+ * Patterns are DateTimeFormatter patterns, which for the common letters (d, M, y, H, m, s) match SimpleDateFormat.
+ */
 public class CalendarFixture {
-	private Calendar stringToCalendar(String date, SimpleDateFormat sdf) {
-		Calendar c = Calendar.getInstance();
-		
+	private static final ZoneId ZONE = ZoneId.of("Europe/Amsterdam");
+	private static final String DATE = "dd-MM-yyyy";
+	private static final String DATETIME = "dd-MM-yyyy HH:mm";
+	private static final String SHORT_DATETIME = "d-M-yyyy H:mm";
+	// used for values without a date, like SimpleDateFormat did
+	private static final LocalDate EPOCH_DATE = LocalDate.of(1970, 1, 1);
+
+	private static TemporalAccessor parse(String value, String pattern) {
 		try {
-			c.setTime(sdf.parse(date));
-		} catch(ParseException e) {
-			e.printStackTrace();
+			return DateTimeFormatterCache.get(pattern).parse(value);
+		} catch (DateTimeParseException e) {
+			throw new SlimFixtureException(false, "Unable to parse '" + value + "' using pattern: " + pattern, e);
 		}
-		
-		return c;
 	}
-	
+
+	private static LocalDateTime toLocalDateTime(String datetime, String pattern) {
+		TemporalAccessor parsed = parse(datetime, pattern);
+		LocalDate date = parsed.query(TemporalQueries.localDate());
+		LocalTime time = parsed.query(TemporalQueries.localTime());
+		return LocalDateTime.of(date == null ? EPOCH_DATE : date, time == null ? LocalTime.MIDNIGHT : time);
+	}
+
+	private static ZonedDateTime toZonedDateTime(String datetime, String pattern) {
+		TemporalAccessor parsed = parse(datetime, pattern);
+		ZoneId zone = parsed.query(TemporalQueries.zone());
+		LocalDate date = parsed.query(TemporalQueries.localDate());
+		LocalTime time = parsed.query(TemporalQueries.localTime());
+		return ZonedDateTime.of(date == null ? EPOCH_DATE : date, time == null ? LocalTime.MIDNIGHT : time,
+				zone == null ? ZONE : zone);
+	}
+
+	private static String format(LocalDateTime datetime, String pattern) {
+		return DateTimeFormatterCache.get(pattern).format(datetime);
+	}
+
 	public String decreaseDateByOneDayIfMarchOnALeapYear(String date) {
-		SimpleDateFormat sdf = new SimpleDateFormat("dd-MM-yyyy");
-		Calendar c = stringToCalendar(date, sdf);   
-		int month = c.get(Calendar.MONTH);
-		int year = c.get(Calendar.YEAR);
-		if (year % 4 == 0 && month == 3)
-		    c.add(Calendar.DAY_OF_YEAR, -1);
-		
-		return sdf.format(c.getTime());  
-	}
-	
+		LocalDate d = LocalDate.from(parse(date, DATE));
+		// the original Calendar based check compared the zero-based Calendar.MONTH with 3,
+		// which is April; pages depend on that, so it is kept
+		if (d.getYear() % 4 == 0 && d.getMonthValue() == 4)
+			d = d.minusDays(1);
+
+		return DateTimeFormatterCache.get(DATE).format(d);
+	}
+
 	public String increaseDateWithHours(String datetime, int hours) {
-		SimpleDateFormat sdf = new SimpleDateFormat("dd-MM-yyyy HH:mm");
-		Calendar c = stringToCalendar(datetime, sdf);
-		c.add(Calendar.HOUR, hours);
-		
-		return sdf.format(c.getTime());  
+		LocalDateTime d = toLocalDateTime(datetime, DATETIME);
+
+		return format(d.atZone(ZONE).plusHours(hours).toLocalDateTime(), DATETIME);
 	}
 
 	public String increaseDateWithMinutes(String datetime, int minutes) {
-		SimpleDateFormat sdf = new SimpleDateFormat("dd-MM-yyyy HH:mm");
-		Calendar c = stringToCalendar(datetime, sdf);   
-		c.add(Calendar.MINUTE, minutes);
-		
-		return sdf.format(c.getTime());  
+		LocalDateTime d = toLocalDateTime(datetime, DATETIME);
+
+		return format(d.atZone(ZONE).plusMinutes(minutes).toLocalDateTime(), DATETIME);
 	}
-	
+
 	public String increaseDatetimeWithMilliSeconds(String datetime, int milliSeconds) {
-		SimpleDateFormat sdf = new SimpleDateFormat("d-M-yyyy H:mm");
-		Calendar c = stringToCalendar(datetime, sdf);   
-		c.add(Calendar.MILLISECOND, milliSeconds);
-		
-		return sdf.format(c.getTime());  
+		LocalDateTime d = toLocalDateTime(datetime, SHORT_DATETIME);
+
+		return format(d.atZone(ZONE).plusNanos(milliSeconds * 1000000L).toLocalDateTime(), SHORT_DATETIME);
 	}
-	
+
 
 	public long convertDatetimeToEpoch(String datetime) {
-		LocalDateTime localDateTime = LocalDateTime.parse(datetime, DateTimeFormatter.ofPattern("d-M-yyyy H:mm") );
-		long millis = localDateTime.atZone(ZoneId.of("Europe/Amsterdam")).toInstant().toEpochMilli();
-		
-		return millis;
+		return toLocalDateTime(datetime, SHORT_DATETIME).atZone(ZONE).toInstant().toEpochMilli();
 	}
-	
+
 	public String convertEpochToDatetime(long epoch) {
-		Date date = new Date(epoch);
-        SimpleDateFormat sdf = new SimpleDateFormat("d-M-yyyy H:mm");
-        sdf.setTimeZone(TimeZone.getTimeZone("Europe/Amsterdam"));
-		
-        return sdf.format(date);
+		return DateTimeFormatterCache.get(SHORT_DATETIME).format(Instant.ofEpochMilli(epoch).atZone(ZONE));
 	}
-	
+
 	public boolean epochEquals(long epoch, String datetime) {
 		return convertDatetimeToEpoch(datetime) == epoch;
 	}
-	
+
 	public boolean datetimeIsGreaterThanOrEqualTo(String datetime1, String datetime2) {
-		SimpleDateFormat sdf = new SimpleDateFormat("d-M-yyyy H:mm");
-		Calendar c1 = stringToCalendar(datetime1, sdf);
-		Calendar c2 = stringToCalendar(datetime2, sdf);
-		
-		return (c1.compareTo(c2) >= 0);
+		return !toLocalDateTime(datetime1, SHORT_DATETIME).isBefore(toLocalDateTime(datetime2, SHORT_DATETIME));
 	}
-	
+
 	public boolean datetimeIsBetweenAnd(String datetime1, String datetime2, String datetime3) {
-		SimpleDateFormat sdf = new SimpleDateFormat("d-M-yyyy H:mm");
-		Calendar c1 = stringToCalendar(datetime1, sdf);
-		Calendar c2 = stringToCalendar(datetime2, sdf);
-		Calendar c3 = stringToCalendar(datetime3, sdf);
-		
-		return (c1.compareTo(c2) >= 0 && c1.compareTo(c3) < 0);
-	}
-	
+		return isBetween(toLocalDateTime(datetime1, SHORT_DATETIME),
+				toLocalDateTime(datetime2, SHORT_DATETIME),
+				toLocalDateTime(datetime3, SHORT_DATETIME));
+	}
+
+	private static boolean isBetween(LocalDateTime d, LocalDateTime from, LocalDateTime until) {
+		return !d.isBefore(from) && d.isBefore(until);
+	}
+
 	public String convertDatetimeFromTo(String datetime, String format1, String format2) {
-		SimpleDateFormat sdf1 = new SimpleDateFormat(format1);
-		SimpleDateFormat sdf2 = new SimpleDateFormat(format2);
-		Calendar c = stringToCalendar(datetime, sdf1);
-		
-		return sdf2.format(c.getTime()); 
+		return DateTimeFormatterCache.get(format2).format(toZonedDateTime(datetime, format1));
 	}
-	
+
 	public String convertDatetimeToIso(String datetime) {
 		if (datetime.equals(""))
 			return "";
-		
-		LocalDateTime localDateTime = LocalDateTime.parse(datetime, DateTimeFormatter.ofPattern("d-M-yyyy H:mm"));
-		ZonedDateTime zonedDateTime = localDateTime.atZone(ZoneId.of("Europe/Amsterdam"));
+
+		ZonedDateTime zonedDateTime = toLocalDateTime(datetime, SHORT_DATETIME).atZone(ZONE);
 		return DateTimeFormatter.ISO_OFFSET_DATE_TIME.format(zonedDateTime);
 	}
-	
-	public boolean isoEquals(String iso, String datetime) {		
+
+	public boolean isoEquals(String iso, String datetime) {
 		return convertDatetimeToIso(datetime).equals(iso);
 	}
+
+	public ArrayList<String> convertDatetimesFromTo(List<String> datetimes, String format1, String format2) {
+		DateTimeFormatter target = DateTimeFormatterCache.get(format2);
+		ArrayList<String> result = new ArrayList<>(datetimes.size());
+		for (String datetime : datetimes) {
+			result.add(target.format(toZonedDateTime(datetime, format1)));
+		}
+		return result;
+	}
+
+	public ArrayList<String> convertDatetimesToIso(List<String> datetimes) {
+		ArrayList<String> result = new ArrayList<>(datetimes.size());
+		for (String datetime : datetimes) {
+			result.add(convertDatetimeToIso(datetime));
+		}
+		return result;
+	}
+
+	public boolean datetimesAreGreaterThanOrEqualTo(List<String> datetimes, String datetime) {
+		LocalDateTime reference = toLocalDateTime(datetime, SHORT_DATETIME);
+		for (String d : datetimes) {
+			if (toLocalDateTime(d, SHORT_DATETIME).isBefore(reference))
+				return false;
+		}
+		return true;
+	}
+
+	public boolean datetimesAreBetweenAnd(List<String> datetimes, String datetime1, String datetime2) {
+		LocalDateTime from = toLocalDateTime(datetime1, SHORT_DATETIME);
+		LocalDateTime until = toLocalDateTime(datetime2, SHORT_DATETIME);
+		for (String d : datetimes) {
+			if (!isBetween(toLocalDateTime(d, SHORT_DATETIME), from, until))
+				return false;
+		}
+		return true;
+	}
 }
@@ -1,5 +1,10 @@
 package nl.specialisterren.fitnesse.fixture.slim;
 
+import nl.hsac.fitnesse.fixture.slim.SlimFixtureException;
+import nl.specialisterren.fitnesse.fixture.util.PatternCache;
+
+import java.util.ArrayList;
+import java.util.Map;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
@@ -21,8 +26,31 @@ public class ExtendedStringFixture {
         return result;
     }
 	
+	/**
+	 * @param value value to match.
+	 * @param regEx regular expression the whole value must match.
+	 * @return all capture groups (group 1 and up) of the match, or null if the value does not match.
+	 */
+	public ArrayList<String> extractGroupsFromUsing(String value, String regEx) {
+        ArrayList<String> result = null;
+        if (value != null) {
+            Matcher matcher = getMatcher(regEx, value);
+            if (matcher.matches()) {
+                result = new ArrayList<>(matcher.groupCount());
+                for (int i = 1; i <= matcher.groupCount(); i++) {
+                    result.add(matcher.group(i));
+                }
+            }
+        }
+        return result;
+    }
+	
 	protected Matcher getMatcher(String regEx, String value) {
-        return Pattern.compile(regEx, Pattern.DOTALL).matcher(value);
+        return PatternCache.get(regEx, Pattern.DOTALL).matcher(value);
+    }
+
+    public Map<String, Object> regexCacheStatistics() {
+        return PatternCache.statistics();
     }
 
     public boolean stringStartsWith(String haystack, String needle) {
@@ -30,22 +58,22 @@ public class ExtendedStringFixture {
     }
 	
 	public String convertToTimestamp(String time) {
-		String regEx = "(\\d+):(\\d+):(\\d+).(\\d+)";
+		ArrayList<String> groups = extractRequiredGroups(time, "(\\d+):(\\d+):(\\d+).(\\d+)");
 		
-		int dt = Integer.parseInt(extractStringFromUsingGroup(time, regEx, 1));
-		int h = Integer.parseInt(extractStringFromUsingGroup(time, regEx, 2));
-		int m = Integer.parseInt(extractStringFromUsingGroup(time, regEx, 3));
-		String s = extractStringFromUsingGroup(time, regEx, 4);
+		int dt = Integer.parseInt(groups.get(0));
+		int h = Integer.parseInt(groups.get(1));
+		int m = Integer.parseInt(groups.get(2));
+		String s = groups.get(3);
 			
 		return String.format("P0DT%sH%sM%s.%sS", dt, h, m, s);
 	}
 	
 	public String convertToTime(String timestamp) {
-		String regEx = "P0DT(\\d+)H(\\d+)M(\\d+).000S";
+		ArrayList<String> groups = extractRequiredGroups(timestamp, "P0DT(\\d+)H(\\d+)M(\\d+).000S");
 		
-		int dt = Integer.parseInt(extractStringFromUsingGroup(timestamp, regEx, 1));
-		int h = Integer.parseInt(extractStringFromUsingGroup(timestamp, regEx, 2));
-		int m = Integer.parseInt(extractStringFromUsingGroup(timestamp, regEx, 3));
+		int dt = Integer.parseInt(groups.get(0));
+		int h = Integer.parseInt(groups.get(1));
+		int m = Integer.parseInt(groups.get(2));
 		
 		if (dt == 0)
 			return String.format("%s:%02d", h, m);
@@ -53,6 +81,14 @@ public class ExtendedStringFixture {
 		return String.format("%s:%02d:%02d", dt, h, m);
 	}
 	
+	private ArrayList<String> extractRequiredGroups(String value, String regEx) {
+		ArrayList<String> groups = extractGroupsFromUsing(value, regEx);
+		if (groups == null)
+			throw new SlimFixtureException(false, "'" + value + "' does not match: " + regEx);
+		
+		return groups;
+	}
+	
 	public boolean timestampEquals(String timestamp, String time) {
 		return convertToTime(timestamp).equals(time);
 	}
@@ -0,0 +1,54 @@
+package nl.specialisterren.fitnesse.fixture.slim;
+
+import nl.specialisterren.fitnesse.fixture.util.HttpMetrics;
+import nl.specialisterren.fitnesse.fixture.util.SharedHttpConnectionPool;
+
+import java.util.Map;
+
+/**
+ * Configures and reports on the connection pool shared by the HTTP fixtures (see SharedHttpConnectionPool).
+ * Typically used in a SuiteSetUp (configuration) and SuiteTearDown (statistics).
+ * Also tags the requests measured by HttpMetrics, typically from a SetUp page using |tag requests with|${PAGE_NAME}|.
+ */
+public class HttpConnectionPoolFixture {
+    public HttpConnectionPoolFixture() {
+        SharedHttpConnectionPool.install();
+    }
+
+    public void setMaxConnectionsPerHostTo(int max) {
+        SharedHttpConnectionPool.setMaxPerRoute(max);
+    }
+
+    public void setMaxConnectionsTo(int max) {
+        SharedHttpConnectionPool.setMaxTotal(max);
+    }
+
+    public void closeConnectionsIdleForSeconds(int seconds) {
+        SharedHttpConnectionPool.closeIdleConnections(seconds);
+    }
+
+    public Map<String, Object> connectionPoolStatistics() {
+        return SharedHttpConnectionPool.statistics();
+    }
+
+    /**
+     * @param tag tag of subsequent requests in the HTTP metrics, e.g. the page name.
+     */
+    public void tagRequestsWith(String tag) {
+        HttpMetrics.setTag(tag);
+    }
+
+    /**
+     * @return count, error rate, throughput and latency percentiles of all requests measured so far.
+     */
+    public Map<String, Object> httpMetricsSummary() {
+        return HttpMetrics.summary();
+    }
+
+    /**
+     * Writes the HTTP metrics summary now, instead of only when the JVM stops.
+     */
+    public void writeHttpMetrics() {
+        HttpMetrics.writeSummary();
+    }
+}
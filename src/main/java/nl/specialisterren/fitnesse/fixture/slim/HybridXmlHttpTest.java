@@ -1,6 +1,33 @@
 package nl.specialisterren.fitnesse.fixture.slim;
 
+import nl.hsac.fitnesse.fixture.slim.SlimFixtureException;
 import nl.hsac.fitnesse.fixture.slim.XmlHttpTest;
+import nl.hsac.fitnesse.fixture.util.HttpResponse;
+import nl.specialisterren.fitnesse.fixture.util.HttpMetrics;
+import nl.specialisterren.fitnesse.fixture.util.Poller;
+import nl.specialisterren.fitnesse.fixture.util.ResponseBody;
+import nl.specialisterren.fitnesse.fixture.util.SharedHttpConnectionPool;
+import nl.specialisterren.fitnesse.fixture.util.XPathEvaluator;
+import org.apache.http.Header;
+import org.apache.http.HttpEntity;
+import org.apache.http.client.config.RequestConfig;
+import org.apache.http.client.methods.CloseableHttpResponse;
+import org.apache.http.client.methods.HttpGet;
+import org.apache.http.client.protocol.HttpClientContext;
+import org.apache.http.entity.ContentType;
+import org.xml.sax.SAXException;
+
+import javax.xml.xpath.XPathExpressionException;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.function.BooleanSupplier;
 
 /**
  * Extension of XmlHttpTest that adds functionality to allow non-xml responses
@@ -15,9 +42,23 @@ import nl.hsac.fitnesse.fixture.slim.XmlHttpTest;
  * after a request that should return an xml response, your test will still
  * fail on receiving a non-xml response, even if you called
  * acceptNonXmlResponsesInSubsequentRequests.
+ *
+ * For binary or large responses (images, subtitles) that are only checked on
+ * size, hash or type, streamNonXmlResponsesToFileInSubsequentRequests keeps
+ * their bodies out of memory.
  */
-public class HybridXmlHttpTest extends XmlHttpTest {
+public class HybridXmlHttpTest extends XmlHttpTest implements PollingFixture {
     protected boolean acceptNonXmlResponses = false;
+    protected final Poller poller = new Poller();
+    private XPathEvaluator xPathEvaluator;
+    protected boolean streamNonXmlResponses = false;
+    private long streamThreshold = 1024 * 1024;
+    private ResponseBody streamedBody;
+    private String streamedBodyMarker;
+
+    public HybridXmlHttpTest() {
+        SharedHttpConnectionPool.install();
+    }
 
     public void acceptNonXmlResponsesInSubsequentRequests() {
         acceptNonXmlResponses = true;
@@ -27,6 +68,164 @@ public class HybridXmlHttpTest extends XmlHttpTest {
         acceptNonXmlResponses = false;
     }
 
+    /**
+     * Makes GET requests route their response by Content-Type: XML, JSON and text bodies up to the stream threshold
+     * are kept in memory (XML is only parsed when an XPath is evaluated), other bodies are streamed to a temporary
+     * file and the response body is empty. Use the response body size, sha 256, type and starts with bytes methods
+     * to check those.
+     * Implies acceptNonXmlResponsesInSubsequentRequests.
+     */
+    public void streamNonXmlResponsesToFileInSubsequentRequests() {
+        streamNonXmlResponses = true;
+        acceptNonXmlResponses = true;
+    }
+
+    public void keepResponsesInMemoryInSubsequentRequests() {
+        streamNonXmlResponses = false;
+    }
+
+    public void setStreamThresholdToBytes(long bytes) {
+        streamThreshold = bytes;
+    }
+
+    @Override
+    protected boolean getImpl(String serviceUrl, boolean followRedirect) {
+        if (!streamNonXmlResponses) {
+            return measure("GET", serviceUrl, 0, () -> super.getImpl(serviceUrl, followRedirect));
+        }
+        return streamFrom(serviceUrl, followRedirect);
+    }
+
+    @Override
+    protected boolean sendToImpl(String body, String serviceUrl, String aContentType, String method) {
+        return measure(method, serviceUrl, HttpMetrics.utf8Length(body),
+                () -> super.sendToImpl(body, serviceUrl, aContentType, method));
+    }
+
+    @Override
+    protected boolean sendFileImpl(String fileName, String serviceUrl, String method) {
+        return measure(method, serviceUrl, 0, () -> super.sendFileImpl(fileName, serviceUrl, method));
+    }
+
+    @Override
+    public boolean headFrom(String serviceUrl) {
+        return measure("HEAD", serviceUrl, 0, () -> super.headFrom(serviceUrl));
+    }
+
+    private boolean measure(String method, String serviceUrl, long requestBytes, BooleanSupplier request) {
+        HttpMetrics.Request metrics = HttpMetrics.start(method, createUrlWithParams(serviceUrl), requestBytes);
+        try {
+            return request.getAsBoolean();
+        } finally {
+            HttpMetrics.end(metrics, getResponse());
+        }
+    }
+
+    // like HttpTest's getImpl, but routes the body by Content-Type (streamNonXmlResponsesToFileInSubsequentRequests)
+    private boolean streamFrom(String serviceUrl, boolean followRedirect) {
+        if (streamedBody != null) {
+            streamedBody.delete();
+            streamedBody = null;
+        }
+        streamedBodyMarker = null;
+        // a fresh response, so a failed request does not leave the previous one's state behind
+        resetResponse();
+        String url = createUrlWithParams(getUrl(serviceUrl));
+        storeLastCall("GET", serviceUrl);
+        HttpResponse response = getResponse();
+        response.setRequest(url);
+        HttpClientContext context = HttpClientContext.create();
+        if (response.getCookieStore() != null) {
+            context.setCookieStore(response.getCookieStore());
+        }
+        HttpGet get = new HttpGet(url);
+        for (Map.Entry<String, Object> header : headerValues().entrySet()) {
+            get.setHeader(header.getKey(), String.valueOf(header.getValue()));
+        }
+        get.setConfig(RequestConfig.custom().setRedirectsEnabled(followRedirect).build());
+        HttpMetrics.Request metrics = HttpMetrics.start("GET", url, 0);
+        int status = 0;
+        try (CloseableHttpResponse httpResponse = SharedHttpConnectionPool.getClient().execute(get, context)) {
+            status = httpResponse.getStatusLine().getStatusCode();
+            response.setStatusCode(status);
+            Map<String, Object> headers = response.getResponseHeaders();
+            headers.clear();
+            for (Header header : httpResponse.getAllHeaders()) {
+                headers.put(header.getName(), header.getValue());
+            }
+            String body = null;
+            HttpEntity entity = httpResponse.getEntity();
+            if (entity != null) {
+                ContentType contentType = ContentType.getLenientOrDefault(entity);
+                // a length of -1 is unknown (e.g. chunked), so the body may be of any size
+                long length = entity.getContentLength();
+                boolean inMemory = isText(contentType.getMimeType()) && length >= 0 && length <= streamThreshold;
+                try (InputStream in = entity.getContent()) {
+                    streamedBody = inMemory ? ResponseBody.inMemory(in) : ResponseBody.toTempFile(in);
+                }
+                Charset charset = contentType.getCharset() == null ? StandardCharsets.UTF_8 : contentType.getCharset();
+                // a new instance, so responseBody() can tell whether the current response is this one
+                body = inMemory ? streamedBody.asString(charset) : new String();
+            }
+            streamedBodyMarker = body;
+            response.setResponse(body);
+        } catch (IOException e) {
+            throw new SlimFixtureException(false, "Unable to get: " + url, e);
+        } finally {
+            HttpMetrics.end(metrics, status, streamedBody == null ? 0 : streamedBody.getSize());
+        }
+        return responseIsValid();
+    }
+
+    private static boolean isText(String contentType) {
+        String mimeType = contentType.toLowerCase(Locale.ROOT);
+        return mimeType.startsWith("text/") || mimeType.endsWith("xml") || mimeType.endsWith("json");
+    }
+
+    public long responseBodySize() {
+        return responseBody().getSize();
+    }
+
+    public String responseBodySha256() {
+        return responseBody().getSha256();
+    }
+
+    /**
+     * @return type of the response body based on its first bytes (e.g. png, jpeg, xml or vtt).
+     */
+    public String responseBodyType() {
+        return responseBody().getMagicType();
+    }
+
+    /**
+     * @param hexBytes expected first bytes, in hex (e.g. 89504E47 for PNG).
+     * @return whether the response body starts with these bytes.
+     */
+    public boolean responseBodyStartsWithBytes(String hexBytes) {
+        return responseBody().startsWith(hexBytes);
+    }
+
+    /**
+     * @return file the response body was streamed to, null if it is kept in memory.
+     */
+    public String responseBodyFile() {
+        ResponseBody body = responseBody();
+        return body.isInFile() ? body.getFile().getAbsolutePath() : null;
+    }
+
+    private ResponseBody responseBody() {
+        String body = getResponseBody();
+        if (streamedBody != null && body == streamedBodyMarker) {
+            return streamedBody;
+        }
+        try {
+            byte[] bytes = body == null ? new byte[0] : body.getBytes(StandardCharsets.UTF_8);
+            return ResponseBody.inMemory(new ByteArrayInputStream(bytes));
+        } catch (IOException e) {
+            throw new IllegalStateException("Unable to read response body", e);
+        }
+    }
+
     @Override
     public boolean responseIsValid() {
         if (acceptNonXmlResponses) {
@@ -39,6 +238,69 @@ public class HybridXmlHttpTest extends XmlHttpTest {
             return super.responseIsValid();
         }
     }
+
+    /**
+     * Evaluates the XPath against the response, which is parsed only once, using a compiled expression from cache.
+     * Falls back to XmlHttpTest's evaluation (and its error reporting) when that fails.
+     */
+    @Override
+    public String xPath(String xPathExpr) {
+        String body = getResponseBody();
+        if (body != null && !body.isEmpty()) {
+            try {
+                return xPathEvaluator().evaluate(body, xPathExpr);
+            } catch (XPathExpressionException | SAXException e) {
+                // let XmlHttpTest evaluate it, so errors are reported as before
+            }
+        }
+        return super.xPath(xPathExpr);
+    }
+
+    /**
+     * Evaluates multiple XPaths against the response.
+     * @param xPathExprs expressions to evaluate.
+     * @return value of each expression (null for expressions not matching).
+     */
+    public ArrayList<String> xPaths(List<String> xPathExprs) {
+        ArrayList<String> values = new ArrayList<>(xPathExprs.size());
+        for (String xPathExpr : xPathExprs) {
+            values.add(xPath(xPathExpr));
+        }
+        return values;
+    }
+
+    @Override
+    public void registerPrefixForNamespace(String prefix, String namespace) {
+        super.registerPrefixForNamespace(prefix, namespace);
+        // compiled expressions hold the namespaces known when they were compiled
+        if (xPathEvaluator != null) {
+            xPathEvaluator.clear();
+        }
+    }
+
+    public Map<String, Object> xPathCacheStatistics() {
+        return xPathEvaluator().statistics();
+    }
+
+    private XPathEvaluator xPathEvaluator() {
+        if (xPathEvaluator == null) {
+            xPathEvaluator = new XPathEvaluator(getEnvironment().getNamespaceContext(),
+                    Integer.getInteger("xPathCacheSize", 256));
+        }
+        return xPathEvaluator;
+    }
+
+    @Override
+    public Poller poller() {
+        return poller;
+    }
+
+    /**
+     * Repeats until completion is finished, as configured by the {@link PollingFixture} methods.
+     */
+    protected boolean pollUntil(RepeatCompletion completion) {
+        return poller.poll(completion, this::repeatUntil, this);
+    }
 	
 	public boolean repeatUntilXPathIsOr(final String xPath, final String expectedValue1, final String expectedValue2) {
         RepeatCompletion completion;
@@ -58,6 +320,6 @@ public class HybridXmlHttpTest extends XmlHttpTest {
                 }
             };
         }
-        return repeatUntil(completion);
+        return pollUntil(completion);
     }
 }
@@ -0,0 +1,250 @@
+package nl.specialisterren.fitnesse.fixture.slim;
+
+import nl.hsac.fitnesse.fixture.slim.HttpTest;
+import nl.hsac.fitnesse.fixture.slim.SlimFixtureException;
+import nl.specialisterren.fitnesse.fixture.util.HttpMetrics;
+import nl.specialisterren.fitnesse.fixture.util.LatencyStatistics;
+
+import java.io.File;
+import java.io.IOException;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Runs a sequence of API requests concurrently, through the same signed (and pooled, recordable) fixtures the
+ * functional pages use, and reports latency percentiles, throughput and error rates per endpoint.
+ * <p>
+ * Each virtual user has its own NpoJsonHttpTest (or NpoXmlHttpTest) and runs the requests added in order, over and
+ * over. With a target rate, iterations are started at that rate (by at most 'concurrency' users at the same time)
+ * and latency is measured from the moment an iteration was due, so a slow server is not hidden by the load
+ * generator waiting for it. Without a target rate, each user starts its next iteration as soon as the previous
+ * one is done.
+ * </p>
+ * The report is written as CSV to target/load-tests. The users' requests are left out of HttpMetrics, so they do
+ * not slow each other down writing per-request metrics, nor mix into the summary of the functional tests.
+ */
+public class LoadTestFixture {
+    private final String apiKey;
+    private final String secret;
+    private final String origin;
+    private final List<Step> steps = new ArrayList<>();
+    private final LatencyStatistics statistics = new LatencyStatistics();
+    private boolean xml = false;
+    private int concurrency = 1;
+    private double targetRate = 0;
+    private String report;
+
+    private static final class Step {
+        private final String method;
+        private final String url;
+        private final String body;
+        private final String label;
+
+        private Step(String method, String url, String body) {
+            this.method = method;
+            this.url = url;
+            this.body = body;
+            // endpoint without host and query, so the same endpoint with other parameters is reported together
+            this.label = HttpMetrics.endpoint(method, url);
+        }
+    }
+
+    public LoadTestFixture(String apiKey, String secret, String origin) {
+        this.apiKey = apiKey;
+        this.secret = secret;
+        this.origin = origin;
+    }
+
+    public void useXmlApi() {
+        xml = true;
+    }
+
+    public void useJsonApi() {
+        xml = false;
+    }
+
+    public void addGet(String url) {
+        steps.add(new Step("GET", url, null));
+    }
+
+    public void addPostTo(String body, String url) {
+        steps.add(new Step("POST", url, body));
+    }
+
+    public void addPutTo(String body, String url) {
+        steps.add(new Step("PUT", url, body));
+    }
+
+    public void addDelete(String url) {
+        steps.add(new Step("DELETE", url, null));
+    }
+
+    public void clearRequests() {
+        steps.clear();
+    }
+
+    public void setConcurrencyTo(int users) {
+        concurrency = users;
+    }
+
+    /**
+     * @param iterationsPerSecond rate at which iterations (of all requests added) are started, 0 for as fast as
+     *                            the users can.
+     */
+    public void setTargetRateToPerSecond(double iterationsPerSecond) {
+        targetRate = iterationsPerSecond;
+    }
+
+    /**
+     * Runs the load test.
+     * @param seconds duration.
+     * @return number of requests done (not counting skipped iterations).
+     */
+    public long runForSeconds(int seconds) throws InterruptedException {
+        if (steps.isEmpty()) {
+            throw new SlimFixtureException(false, "No requests added");
+        }
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(seconds);
+        ThreadLocal<HttpTest> fixtures = ThreadLocal.withInitial(() -> {
+            // the users' requests are measured by this fixture, not (also) by HttpMetrics
+            HttpMetrics.excludeCurrentThread();
+            return createFixture();
+        });
+        ExecutorService users = Executors.newFixedThreadPool(concurrency);
+        statistics.start();
+        try {
+            if (targetRate > 0) {
+                runAtRate(users, fixtures, deadline);
+            } else {
+                for (int i = 0; i < concurrency; i++) {
+                    users.submit(() -> {
+                        while (System.nanoTime() < deadline) {
+                            iteration(fixtures.get(), System.nanoTime());
+                        }
+                    });
+                }
+            }
+            users.shutdown();
+            users.awaitTermination(seconds + 60, TimeUnit.SECONDS);
+        } finally {
+            users.shutdownNow();
+            statistics.stop();
+        }
+        writeReport();
+        return (long) statistics.summary(null).get("count");
+    }
+
+    private void runAtRate(ExecutorService users, ThreadLocal<HttpTest> fixtures, long deadline)
+            throws InterruptedException {
+        long intervalNanos = (long) (TimeUnit.SECONDS.toNanos(1) / targetRate);
+        Semaphore available = new Semaphore(concurrency);
+        AtomicLong due = new AtomicLong(System.nanoTime());
+        ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor();
+        try {
+            scheduler.scheduleAtFixedRate(() -> {
+                long scheduled = due.getAndAdd(intervalNanos);
+                // when all users are busy the iteration is skipped, and counted as error (without a latency)
+                if (available.tryAcquire()) {
+                    users.submit(() -> {
+                        try {
+                            iteration(fixtures.get(), scheduled);
+                        } finally {
+                            available.release();
+                        }
+                    });
+                } else {
+                    statistics.recordSkipped();
+                }
+            }, 0, intervalNanos, TimeUnit.NANOSECONDS);
+            TimeUnit.NANOSECONDS.sleep(Math.max(0, deadline - System.nanoTime()));
+        } finally {
+            scheduler.shutdownNow();
+        }
+    }
+
+    private void iteration(HttpTest fixture, long start) {
+        long stepStart = start;
+        for (Step step : steps) {
+            boolean success;
+            try {
+                success = execute(fixture, step);
+            } catch (RuntimeException e) {
+                success = false;
+            }
+            long end = System.nanoTime();
+            statistics.record(step.label, end - stepStart, success);
+            stepStart = end;
+        }
+    }
+
+    private static boolean execute(HttpTest fixture, Step step) {
+        switch (step.method) {
+            case "GET":
+                return fixture.getFrom(step.url);
+            case "POST":
+                return fixture.postTo(step.body, step.url);
+            case "PUT":
+                return fixture.putTo(step.body, step.url);
+            default:
+                return fixture.deleteFrom(step.url);
+        }
+    }
+
+    private HttpTest createFixture() {
+        return xml ? new NpoXmlHttpTest(apiKey, secret, origin) : new NpoJsonHttpTest(apiKey, secret, origin);
+    }
+
+    private void writeReport() {
+        File file = new File("target/load-tests",
+                new SimpleDateFormat("yyyyMMdd-HHmmss").format(new Date()) + ".csv");
+        try {
+            statistics.writeCsv(file);
+            report = file.getAbsolutePath();
+        } catch (IOException e) {
+            throw new SlimFixtureException(false, "Unable to write load test report: " + file, e);
+        }
+    }
+
+    /**
+     * @return count, errors, skipped iterations, error rate, throughput and latency percentiles for all requests
+     * of last run.
+     */
+    public Map<String, Object> summary() {
+        return statistics.summary(null);
+    }
+
+    /**
+     * @param endpoint method and path, e.g. GET /v1/api/media/{id} (see HttpMetrics#endpoint).
+     */
+    public Map<String, Object> summaryOf(String endpoint) {
+        return statistics.summary(endpoint);
+    }
+
+    public double percentileOfInMilliseconds(double percentile, String endpoint) {
+        return statistics.percentile(endpoint, percentile);
+    }
+
+    public double errorRate() {
+        return (double) summary().get("errorRate");
+    }
+
+    public double throughput() {
+        return (double) summary().get("throughput");
+    }
+
+    /**
+     * @return CSV file of last run.
+     */
+    public String report() {
+        return report;
+    }
+}
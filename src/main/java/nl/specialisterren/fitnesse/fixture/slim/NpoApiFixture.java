@@ -0,0 +1,40 @@
+package nl.specialisterren.fitnesse.fixture.slim;
+
+import nl.specialisterren.fitnesse.fixture.util.HttpRecorder;
+import nl.specialisterren.fitnesse.fixture.util.NpoRequestPipeline;
+
+import java.util.Map;
+
+/**
+ * Recording and signing fixture methods of the NPO API fixtures (NpoJsonHttpTest and NpoXmlHttpTest),
+ * implemented once on top of their NpoRequestPipeline.
+ */
+public interface NpoApiFixture {
+    NpoRequestPipeline requestPipeline();
+
+    /**
+     * Stores the responses of subsequent requests in recording name (see {@link HttpRecorder}).
+     */
+    default void recordResponsesIn(String name) {
+        requestPipeline().getRecorder().setMode(HttpRecorder.Mode.RECORD, name);
+    }
+
+    /**
+     * Takes the responses of subsequent requests from recording name, instead of sending the requests.
+     */
+    default void replayResponsesFrom(String name) {
+        requestPipeline().getRecorder().setMode(HttpRecorder.Mode.REPLAY, name);
+    }
+
+    default void sendRequestsWithoutRecording() {
+        requestPipeline().getRecorder().setMode(HttpRecorder.Mode.OFF, "");
+    }
+
+    default Map<String, Object> recordingStatistics() {
+        return requestPipeline().getRecorder().statistics();
+    }
+
+    default Map<String, Object> signingStatistics() {
+        return requestPipeline().getSigner().statistics();
+    }
+}
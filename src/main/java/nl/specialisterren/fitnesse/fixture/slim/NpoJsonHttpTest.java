@@ -2,60 +2,86 @@ package nl.specialisterren.fitnesse.fixture.slim;
 
 import nl.hsac.fitnesse.fixture.slim.JsonHttpTest;
 import nl.hsac.fitnesse.fixture.slim.SlimFixtureException;
-import nl.vpro.api.client.frontend.NpoApiAuthentication;
+import nl.hsac.fitnesse.fixture.util.HttpResponse;
+import nl.specialisterren.fitnesse.fixture.util.HttpMetrics;
+import nl.specialisterren.fitnesse.fixture.util.JsonPaths;
+import nl.specialisterren.fitnesse.fixture.util.NpoRequestPipeline;
+import nl.specialisterren.fitnesse.fixture.util.NpoRequestSigner;
+import nl.specialisterren.fitnesse.fixture.util.Poller;
+import nl.specialisterren.fitnesse.fixture.util.SharedHttpConnectionPool;
+import nl.specialisterren.fitnesse.fixture.util.StreamingJsonEvaluator;
+import org.apache.http.Header;
+import org.apache.http.HttpEntity;
+import org.apache.http.client.methods.CloseableHttpResponse;
+import org.apache.http.client.methods.HttpGet;
+import org.apache.http.client.protocol.HttpClientContext;
+import org.apache.http.util.EntityUtils;
 
-import java.net.URI;
-import java.net.URISyntaxException;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Map;
+import java.util.function.BooleanSupplier;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
 
-public class NpoJsonHttpTest extends JsonHttpTest {
-    protected NpoApiAuthentication auth;
+public class NpoJsonHttpTest extends JsonHttpTest implements NpoApiFixture, PollingFixture {
+    // String.format placeholders for the item index (and escaped percent signs)
+    private static final Pattern ITEM_INDEX_PLACEHOLDER = Pattern.compile("%%|%(1\\$)?[sd]");
+    protected final NpoRequestPipeline pipeline;
+    private String parsedBody;
+    private Object parsedDocument;
+    protected final Poller poller = new Poller();
+    private final StreamingJsonEvaluator streamingEvaluator = new StreamingJsonEvaluator();
 
     public NpoJsonHttpTest(String apiKey, String secret, String origin) {
-        auth = new NpoApiAuthentication(apiKey, secret, origin);
+        SharedHttpConnectionPool.install();
+        pipeline = new NpoRequestPipeline(NpoRequestSigner.forCredentials(apiKey, secret, origin),
+                this::createUrlWithParams, (name, value) -> setValueForHeader(value, name), this::getResponse);
     }
 
     @Override
     protected boolean getImpl(String serviceUrl, boolean followRedirect) {
-        setAuthenticationHeaders(serviceUrl);
-
-        return super.getImpl(serviceUrl, followRedirect);
+        return send("GET", serviceUrl, null, 0, () -> super.getImpl(serviceUrl, followRedirect));
     }
 
     @Override
     protected boolean sendToImpl(String body, String serviceUrl, String aContentType, String method) {
-        setAuthenticationHeaders(serviceUrl);
-
-        return super.sendToImpl(body, serviceUrl, aContentType, method);
+        return send(method, serviceUrl, body, HttpMetrics.utf8Length(body),
+                () -> super.sendToImpl(body, serviceUrl, aContentType, method));
     }
 
     @Override
     protected boolean sendFileImpl(String fileName, String serviceUrl, String method) {
-        setAuthenticationHeaders(serviceUrl);
-
-        return super.sendFileImpl(fileName, serviceUrl, method);
+        // size of uploaded files is not measured
+        return send(method, serviceUrl, fileName, 0, () -> super.sendFileImpl(fileName, serviceUrl, method));
     }
 
     @Override
     public boolean headFrom(String serviceUrl) {
-        setAuthenticationHeaders(serviceUrl);
-
-        return super.headFrom(serviceUrl);
+        return send("HEAD", serviceUrl, null, 0, () -> super.headFrom(serviceUrl));
     }
 
-    protected void setAuthenticationHeaders(String url) {
-        Map<String, Object> authHeaders;
-        String paramsUrl = createUrlWithParams(url);
+    private boolean send(String method, String serviceUrl, String body, long requestBytes, BooleanSupplier request) {
+        return pipeline.send(method, serviceUrl, body, requestBytes, request, () -> replay(method, serviceUrl, body));
+    }
 
-        try {
-            authHeaders = auth.authenticate(new URI(paramsUrl));
-        } catch (URISyntaxException e) {
-            throw new SlimFixtureException("Unable to parse URL for API authentication!", e);
-        }
+    // sets the request state HttpTest sets when sending, so repeats and the page report show the replayed call
+    private boolean replay(String method, String serviceUrl, String body) {
+        resetResponse();
+        getResponse().setRequest(body);
+        storeLastCall(method, serviceUrl);
+        pipeline.replay(method, serviceUrl, body);
+        return responseIsValid();
+    }
 
-        for (Map.Entry<String,Object> h : authHeaders.entrySet()) {
-            setValueForHeader(h.getValue(), h.getKey());
-        }
+    @Override
+    public NpoRequestPipeline requestPipeline() {
+        return pipeline;
     }
 
     public boolean isSingleValue(Object object) {
@@ -63,43 +89,220 @@ public class NpoJsonHttpTest extends JsonHttpTest {
 	}
 
     public Object elementOfJsonPathDefault(int index, String path, Object defaultValue) {
-        try {
-            return elementOfJsonPath(index, path);
-        } catch (IndexOutOfBoundsException e) {
-            return defaultValue;
-        }
+        List<Object> values = JsonPaths.allValues(responseDocument(), path);
+        return index < values.size() ? values.get(index) : defaultValue;
+    }
+
+    @Override
+    public Poller poller() {
+        return poller;
+    }
+
+    /**
+     * Repeats until completion is finished, as configured by the {@link PollingFixture} methods.
+     */
+    protected boolean pollUntil(RepeatCompletion completion) {
+        return poller.poll(completion, this::repeatUntil, this);
     }
 	
+	/**
+	 * Repeats the last call until the value at path of each of the first items is not the expected value.
+	 * @param jsonPath path containing a String.format placeholder (%s, %d or %1$s) at the place of the item index,
+	 *                 e.g. items[%s].broadcasters[0].id.
+	 * @param numberOfItems number of items to check.
+	 * @param expectedValue value none of the items may have (null: all items must have a value).
+	 * @return true if repeat completed.
+	 */
 	public boolean repeatUntilJsonPathOfFirstItemsIsNot(final String jsonPath, int numberOfItems, final Object expectedValue) {
+		// a slice selects all items at once, so each poll walks the response only once
+		String itemsPath = itemsPath(jsonPath, numberOfItems);
 		RepeatCompletion completion;
         if (expectedValue == null) {
             completion = new RepeatLastCall() {
                 @Override
                 public boolean isFinished() {
-					Object actual;
-					boolean result = true;
-					for (int i=0; i < numberOfItems; i++) {
-						actual = jsonPath(String.format(jsonPath, i));
-						result = result && (actual != null);
-					}
-                    return result;
+					List<Object> values = jsonPathValues(itemsPath);
+					// items without the path (or beyond the end of the list) are not returned at all
+                    return values.size() >= numberOfItems && !values.contains(null);
                 }
             };
         } else {
             completion = new RepeatLastCall() {
                 @Override
                 public boolean isFinished() {
-					Object actual;
-					boolean result = true;
-					for (int i=0; i < numberOfItems; i++) {
-						actual = jsonPath(String.format(jsonPath, i));
-						result = result && !compareActualToExpected(expectedValue, actual);
+					for (Object actual : jsonPathValues(itemsPath)) {
+						if (compareActualToExpected(expectedValue, actual))
+							return false;
 					}
-                    return result;
+                    return true;
                 }
             };
         }
-        return repeatUntil(completion);
+        return pollUntil(completion);
+	}
+
+	private static String itemsPath(String jsonPath, int numberOfItems) {
+		Matcher matcher = ITEM_INDEX_PLACEHOLDER.matcher(jsonPath);
+		StringBuffer itemsPath = new StringBuffer();
+		boolean placeholderFound = false;
+		while (matcher.find()) {
+			boolean escapedPercent = matcher.group().equals("%%");
+			placeholderFound |= !escapedPercent;
+			matcher.appendReplacement(itemsPath, escapedPercent ? "%" : "0:" + numberOfItems);
+		}
+		matcher.appendTail(itemsPath);
+		if (!placeholderFound) {
+			throw new SlimFixtureException(false,
+					"Path must contain a placeholder (%s, %d or %1$s) for the item index: " + jsonPath);
+		}
+		return itemsPath.toString();
+	}
+
+	/**
+	 * @param path JsonPath expression, which may match multiple values.
+	 * @return all values matched in the current response.
+	 */
+	public ArrayList<Object> jsonPathValues(String path) {
+		return new ArrayList<>(JsonPaths.values(responseDocument(), path));
+	}
+
+	/**
+	 * @return current response body as parsed JSON, parsed only once per response.
+	 */
+	protected Object responseDocument() {
+		String body = getResponseBody();
+		// identity check on purpose: the body is the same String instance until a new response is received
+		if (body != parsedBody) {
+			parsedDocument = body == null ? null : JsonPaths.parse(body);
+			parsedBody = body;
+		}
+		return parsedDocument;
+	}
+
+	public Map<String, Object> jsonPathCacheStatistics() {
+		return JsonPaths.statistics();
+	}
+
+	/**
+	 * Counts (and sums) the matches of path in subsequent stream get from calls.
+	 * @param path path of field names, indexes and [*], e.g. $.items[*].result.mid.
+	 */
+	public void streamJsonPath(String path) {
+		streamingEvaluator.addPath(path, false);
+	}
+
+	/**
+	 * Like streamJsonPath, but also keeps the values matched.
+	 */
+	public void streamValuesOfJsonPath(String path) {
+		streamingEvaluator.addPath(path, true);
+	}
+
+	/**
+	 * Sends a GET request and evaluates the streamed json paths while the response is read, without keeping
+	 * the body (the response body is only kept for error responses). When recording the body is read into memory
+	 * once so it can be stored, when replaying the paths are evaluated against the recorded body.
+	 * @param serviceUrl URL to get.
+	 * @return true if the response status is not an error.
+	 */
+	public boolean streamGetFrom(String serviceUrl) {
+		String cleanUrl = getUrl(serviceUrl);
+		if (pipeline.getRecorder().isReplaying()) {
+			return streamReplayedGet(cleanUrl);
+		}
+		// a fresh response and the request state HttpTest sets, so the page report and repeats show this call
+		resetResponse();
+		String url = createUrlWithParams(cleanUrl);
+		storeLastCall("GET", cleanUrl);
+		HttpResponse response = getResponse();
+		response.setRequest(url);
+		HttpClientContext context = HttpClientContext.create();
+		if (response.getCookieStore() != null) {
+			context.setCookieStore(response.getCookieStore());
+		}
+		HttpGet get = new HttpGet(url);
+		for (Map.Entry<String, Object> header : headerValues().entrySet()) {
+			get.setHeader(header.getKey(), String.valueOf(header.getValue()));
+		}
+		HttpMetrics.Request metrics = HttpMetrics.start("GET", url, 0);
+		int status = 0;
+		long bytes = 0;
+		pipeline.sign(url, get::setHeader);
+		try (CloseableHttpResponse httpResponse = SharedHttpConnectionPool.getClient().execute(get, context)) {
+			status = httpResponse.getStatusLine().getStatusCode();
+			response.setStatusCode(status);
+			Map<String, Object> headers = response.getResponseHeaders();
+			headers.clear();
+			for (Header header : httpResponse.getAllHeaders()) {
+				headers.put(header.getName(), header.getValue());
+			}
+			HttpEntity entity = httpResponse.getEntity();
+			String body = null;
+			if (entity != null) {
+				if (status < 400 && !pipeline.getRecorder().isRecording()) {
+					try (InputStream in = entity.getContent()) {
+						streamingEvaluator.evaluate(in);
+					}
+					bytes = streamingEvaluator.getBytesProcessed();
+				} else {
+					body = EntityUtils.toString(entity, StandardCharsets.UTF_8);
+					bytes = HttpMetrics.utf8Length(body);
+				}
+			}
+			response.setResponse(body);
+			pipeline.getRecorder().record("GET", url, null, response);
+			return evaluateStreamedBody(response);
+		} catch (IOException e) {
+			throw new SlimFixtureException(false, "Unable to get: " + url, e);
+		} finally {
+			HttpMetrics.end(metrics, status, bytes);
+		}
+	}
+
+	private boolean streamReplayedGet(String cleanUrl) {
+		replay("GET", cleanUrl, null);
+		HttpResponse response = getResponse();
+		response.setRequest(createUrlWithParams(cleanUrl));
+		try {
+			return evaluateStreamedBody(response);
+		} catch (IOException e) {
+			throw new SlimFixtureException(false, "Unable to read recorded response of: " + cleanUrl, e);
+		}
+	}
+
+	// evaluates the paths against a body kept in memory (recording or replaying), which is then dropped as when
+	// streaming
+	private boolean evaluateStreamedBody(HttpResponse response) throws IOException {
+		int status = response.getStatusCode();
+		String body = response.getResponse();
+		if (status < 400 && body != null) {
+			streamingEvaluator.evaluate(new ByteArrayInputStream(body.getBytes(StandardCharsets.UTF_8)));
+			response.setResponse(null);
+		}
+		return status >= 100 && status < 400;
+	}
+
+	public long streamedCountOf(String path) {
+		return streamingEvaluator.getResult(path).getCount();
+	}
+
+	public BigDecimal streamedSumOf(String path) {
+		return streamingEvaluator.getResult(path).getSum();
+	}
+
+	public ArrayList<Object> streamedValuesOf(String path) {
+		return new ArrayList<>(streamingEvaluator.getResult(path).getValues());
+	}
+
+	/**
+	 * @return number of elements of the array selected by the path's first [*].
+	 */
+	public long streamedItemsOf(String path) {
+		return streamingEvaluator.getResult(path).getItems();
+	}
+
+	public long streamedBytes() {
+		return streamingEvaluator.getBytesProcessed();
 	}
 	
 	public String storeIfDevElseStoreCurrentEnvIs(String valueDev, String valueTest, String env) {
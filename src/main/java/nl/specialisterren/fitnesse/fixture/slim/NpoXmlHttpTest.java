@@ -1,60 +1,59 @@
 package nl.specialisterren.fitnesse.fixture.slim;
 
 import nl.hsac.fitnesse.fixture.slim.XmlHttpTest;
-import nl.hsac.fitnesse.fixture.slim.SlimFixtureException;
-import nl.vpro.api.client.frontend.NpoApiAuthentication;
+import nl.specialisterren.fitnesse.fixture.util.HttpMetrics;
+import nl.specialisterren.fitnesse.fixture.util.NpoRequestPipeline;
+import nl.specialisterren.fitnesse.fixture.util.NpoRequestSigner;
+import nl.specialisterren.fitnesse.fixture.util.SharedHttpConnectionPool;
 
-import java.net.URI;
-import java.net.URISyntaxException;
-import java.util.Map;
+import java.util.function.BooleanSupplier;
 
-public class NpoXmlHttpTest extends XmlHttpTest {
-    protected NpoApiAuthentication auth;
+public class NpoXmlHttpTest extends XmlHttpTest implements NpoApiFixture {
+    protected final NpoRequestPipeline pipeline;
 
     public NpoXmlHttpTest(String apiKey, String secret, String origin) {
-        auth = new NpoApiAuthentication(apiKey, secret, origin);
+        SharedHttpConnectionPool.install();
+        pipeline = new NpoRequestPipeline(NpoRequestSigner.forCredentials(apiKey, secret, origin),
+                this::createUrlWithParams, (name, value) -> setValueForHeader(value, name), this::getResponse);
     }
 
     @Override
     protected boolean getImpl(String serviceUrl, boolean followRedirect) {
-        setAuthenticationHeaders(serviceUrl);
-
-        return super.getImpl(serviceUrl, followRedirect);
+        return send("GET", serviceUrl, null, 0, () -> super.getImpl(serviceUrl, followRedirect));
     }
 
     @Override
     protected boolean sendToImpl(String body, String serviceUrl, String aContentType, String method) {
-        setAuthenticationHeaders(serviceUrl);
-
-        return super.sendToImpl(body, serviceUrl, aContentType, method);
+        return send(method, serviceUrl, body, HttpMetrics.utf8Length(body),
+                () -> super.sendToImpl(body, serviceUrl, aContentType, method));
     }
 
     @Override
     protected boolean sendFileImpl(String fileName, String serviceUrl, String method) {
-        setAuthenticationHeaders(serviceUrl);
-
-        return super.sendFileImpl(fileName, serviceUrl, method);
+        // size of uploaded files is not measured
+        return send(method, serviceUrl, fileName, 0, () -> super.sendFileImpl(fileName, serviceUrl, method));
     }
 
     @Override
     public boolean headFrom(String serviceUrl) {
-        setAuthenticationHeaders(serviceUrl);
-
-        return super.headFrom(serviceUrl);
+        return send("HEAD", serviceUrl, null, 0, () -> super.headFrom(serviceUrl));
     }
 
-    protected void setAuthenticationHeaders(String url) {
-        Map<String, Object> authHeaders;
-        String paramsUrl = createUrlWithParams(url);
+    private boolean send(String method, String serviceUrl, String body, long requestBytes, BooleanSupplier request) {
+        return pipeline.send(method, serviceUrl, body, requestBytes, request, () -> replay(method, serviceUrl, body));
+    }
 
-        try {
-            authHeaders = auth.authenticate(new URI(paramsUrl));
-        } catch (URISyntaxException e) {
-            throw new SlimFixtureException("Unable to parse URL for API authentication!", e);
-        }
+    // sets the request state HttpTest sets when sending, so repeats and the page report show the replayed call
+    private boolean replay(String method, String serviceUrl, String body) {
+        resetResponse();
+        getResponse().setRequest(body);
+        storeLastCall(method, serviceUrl);
+        pipeline.replay(method, serviceUrl, body);
+        return responseIsValid();
+    }
 
-        for (Map.Entry<String,Object> h : authHeaders.entrySet()) {
-            setValueForHeader(h.getValue(), h.getKey());
-        }
+    @Override
+    public NpoRequestPipeline requestPipeline() {
+        return pipeline;
     }
 }
@@ -0,0 +1,41 @@
+package nl.specialisterren.fitnesse.fixture.slim;
+
+import nl.specialisterren.fitnesse.fixture.util.Poller;
+
+import java.util.Map;
+
+/**
+ * Fixture methods configuring how the repeat until methods of NpoJsonHttpTest and HybridXmlHttpTest poll,
+ * implemented once on top of their {@link Poller}.
+ */
+public interface PollingFixture {
+    Poller poller();
+
+    default void useExponentialBackoffFromToMilliseconds(long initialMillis, long maxMillis) {
+        poller().useBackoff(Poller.Backoff.EXPONENTIAL, initialMillis, maxMillis);
+    }
+
+    default void useJitteredBackoffFromToMilliseconds(long initialMillis, long maxMillis) {
+        poller().useBackoff(Poller.Backoff.JITTERED, initialMillis, maxMillis);
+    }
+
+    default void useFixedRepeatInterval() {
+        poller().useFixedInterval();
+    }
+
+    default void setRepeatDeadlineToSeconds(int seconds) {
+        poller().setDeadline(seconds * 1000L);
+    }
+
+    default void sendConditionalRequestsWhenRepeating() {
+        poller().setConditional(true);
+    }
+
+    default void sendFullRequestsWhenRepeating() {
+        poller().setConditional(false);
+    }
+
+    default Map<String, Object> lastPollStatistics() {
+        return poller().statistics();
+    }
+}
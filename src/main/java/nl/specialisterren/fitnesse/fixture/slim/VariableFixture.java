@@ -1,20 +1,23 @@
 package nl.specialisterren.fitnesse.fixture.slim;
 
-import java.util.prefs.Preferences;
+import nl.specialisterren.fitnesse.fixture.util.VariableStore;
 
+/**
+ * Passes values between pages of a test run, see {@link VariableStore}.
+ */
 public class VariableFixture {
-	private Preferences prefs;
-	
-
-	public VariableFixture() {
-		prefs = Preferences.userNodeForPackage(nl.specialisterren.fitnesse.fixture.slim.VariableFixture.class);
-	}
+	private final VariableStore store = VariableStore.getInstance();
 	
 	public String getVar(String variableName) {
-		return prefs.get(variableName, "");
+		String value = store.get(variableName);
+		return value == null ? "" : value;
 	}
 	
 	public void setVarTo(String variableName, String variableValue) {
-		prefs.put(variableName, variableValue);
+		store.put(variableName, variableValue == null ? "" : variableValue);
+	}
+
+	public void clearVariables() {
+		store.clear();
 	}
 }
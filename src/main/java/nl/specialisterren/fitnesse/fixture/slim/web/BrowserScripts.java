@@ -0,0 +1,40 @@
+package nl.specialisterren.fitnesse.fixture.slim.web;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Loads (and caches) the JavaScript snippets that ExtendedBrowserTest executes in the browser.
+ * The scripts are stored as classpath resources next to this class, so they can be edited as real JavaScript.
+ */
+final class BrowserScripts {
+    private static final Map<String, String> SCRIPTS = new ConcurrentHashMap<>();
+
+    private BrowserScripts() {
+    }
+
+    static String get(String name) {
+        return SCRIPTS.computeIfAbsent(name, BrowserScripts::load);
+    }
+
+    private static String load(String name) {
+        try (InputStream in = BrowserScripts.class.getResourceAsStream(name)) {
+            if (in == null) {
+                throw new IllegalStateException("Unable to find browser script: " + name);
+            }
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            byte[] buffer = new byte[4096];
+            int read;
+            while ((read = in.read(buffer)) != -1) {
+                out.write(buffer, 0, read);
+            }
+            return new String(out.toByteArray(), StandardCharsets.UTF_8);
+        } catch (IOException e) {
+            throw new IllegalStateException("Unable to read browser script: " + name, e);
+        }
+    }
+}
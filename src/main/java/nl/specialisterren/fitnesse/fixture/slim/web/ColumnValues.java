@@ -0,0 +1,155 @@
+package nl.specialisterren.fitnesse.fixture.slim.web;
+
+import nl.hsac.fitnesse.fixture.slim.SlimFixtureException;
+import nl.specialisterren.fitnesse.fixture.util.DateTimeFormatterCache;
+
+import java.math.BigDecimal;
+import java.text.ParsePosition;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Converts the texts of a table column to typed values, so they can be compared and checked for order.
+ * Supported types:
+ * <ul>
+ *     <li><code>date</code> or <code>date:pattern</code>: a date at the start of the text (default dd-MM-yyyy)</li>
+ *     <li><code>datetime</code> or <code>datetime:pattern</code>: a date and time at the start of the text
+ *     (default dd-MM-yyyy HH:mm)</li>
+ *     <li><code>number</code>: a decimal number, using either ',' or '.' as decimal separator</li>
+ *     <li><code>text</code>: the text itself</li>
+ * </ul>
+ * Any text after a parsed date (e.g. a time after the date) is ignored.
+ */
+public final class ColumnValues {
+    private static final String DEFAULT_DATE_PATTERN = "dd-MM-yyyy";
+    private static final String DEFAULT_DATETIME_PATTERN = "dd-MM-yyyy HH:mm";
+    private static final Locale LOCALE = new Locale("nl", "NL");
+
+    private ColumnValues() {
+    }
+
+    public static List<Comparable<?>> parse(List<String> texts, String type) {
+        List<Comparable<?>> values = new ArrayList<>(texts.size());
+        for (String text : texts) {
+            values.add(parse(text, type));
+        }
+        return values;
+    }
+
+    /**
+     * @param text text to convert.
+     * @param type type to convert to (see class comment).
+     * @return typed value, or null if text is null or empty.
+     */
+    public static Comparable<?> parse(String text, String type) {
+        if (text == null || text.trim().isEmpty()) {
+            return null;
+        }
+        String value = text.trim();
+        String kind = type == null ? "text" : type.trim();
+        String pattern = null;
+        int colon = kind.indexOf(':');
+        if (colon > 0) {
+            pattern = kind.substring(colon + 1);
+            kind = kind.substring(0, colon);
+        }
+        try {
+            switch (kind.toLowerCase(Locale.ROOT)) {
+                case "date":
+                    return LocalDate.from(formatter(pattern == null ? DEFAULT_DATE_PATTERN : pattern)
+                            .parse(value, new ParsePosition(0)));
+                case "datetime":
+                    return LocalDateTime.from(formatter(pattern == null ? DEFAULT_DATETIME_PATTERN : pattern)
+                            .parse(value, new ParsePosition(0)));
+                case "number":
+                    return new BigDecimal(value.replace(" ", "").replace(',', '.'));
+                case "text":
+                    return value;
+                default:
+                    throw new SlimFixtureException(false, "Unknown column type: " + type
+                            + ". Please specify one of date, date:<pattern>, datetime, datetime:<pattern>, number or text");
+            }
+        } catch (DateTimeParseException | NumberFormatException e) {
+            throw new SlimFixtureException(false, "Unable to convert '" + value + "' to " + type, e);
+        }
+    }
+
+    /**
+     * @param values values to check, empty cells (null values) are skipped.
+     * @param order <code>ascending</code> or <code>descending</code>.
+     * @return index of the first value that is out of order, or -1 if all values are in order.
+     */
+    public static int firstOutOfOrder(List<Comparable<?>> values, String order) {
+        boolean descending = isDescending(order);
+        Comparable<?> previous = null;
+        for (int i = 0; i < values.size(); i++) {
+            Comparable<?> value = values.get(i);
+            if (value == null) {
+                continue;
+            }
+            if (previous != null) {
+                int comparison = compare(previous, value);
+                if (descending ? comparison < 0 : comparison > 0) {
+                    return i;
+                }
+            }
+            previous = value;
+        }
+        return -1;
+    }
+
+    /**
+     * @param actual value to check, an empty cell (null) never satisfies the comparison.
+     * @param comparison one of < <= == >= >.
+     * @param expected value to compare with.
+     * @return whether actual compares to expected as specified.
+     */
+    public static boolean compare(Comparable<?> actual, String comparison, Comparable<?> expected) {
+        if (actual == null) {
+            return false;
+        }
+        int outcome = compare(actual, expected);
+        switch (comparison) {
+            case "<":
+                return outcome < 0;
+            case "<=":
+                return outcome <= 0;
+            case "==":
+                return outcome == 0;
+            case ">=":
+                return outcome >= 0;
+            case ">":
+                return outcome > 0;
+            default:
+                throw new SlimFixtureException(false, "Invalid comparison: " + comparison
+                        + ". Please specify one of < <= == >= >");
+        }
+    }
+
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    public static int compare(Comparable<?> a, Comparable<?> b) {
+        if (a == null || b == null) {
+            throw new SlimFixtureException(false, "Unable to compare empty value");
+        }
+        return ((Comparable) a).compareTo(b);
+    }
+
+    static DateTimeFormatter formatter(String pattern) {
+        return DateTimeFormatterCache.get(pattern, LOCALE);
+    }
+
+    private static boolean isDescending(String order) {
+        String o = order == null ? "" : order.trim().toLowerCase(Locale.ROOT);
+        if (o.startsWith("desc") || o.equals("aflopend")) {
+            return true;
+        } else if (o.startsWith("asc") || o.equals("oplopend")) {
+            return false;
+        }
+        throw new SlimFixtureException(false, "Invalid order: " + order + ". Please specify ascending or descending");
+    }
+}
@@ -0,0 +1,56 @@
+package nl.specialisterren.fitnesse.fixture.slim.web;
+
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * State of a single element, as captured in bulk by ExtendedBrowserTest#snapshotOf.
+ */
+public class ElementSnapshot {
+    private final boolean displayed;
+    private final String text;
+    private final Map<String, String> attributes;
+
+    public ElementSnapshot(boolean displayed, String text, Map<String, String> attributes) {
+        this.displayed = displayed;
+        this.text = text;
+        this.attributes = Collections.unmodifiableMap(new LinkedHashMap<>(attributes));
+    }
+
+    static ElementSnapshot fromScriptResult(Object scriptResult) {
+        Map<?, ?> values = (Map<?, ?>) scriptResult;
+        Map<String, String> attributes = new LinkedHashMap<>();
+        Object scriptAttributes = values.get("attributes");
+        if (scriptAttributes instanceof Map) {
+            for (Map.Entry<?, ?> e : ((Map<?, ?>) scriptAttributes).entrySet()) {
+                attributes.put(String.valueOf(e.getKey()), e.getValue() == null ? null : e.getValue().toString());
+            }
+        }
+        Object text = values.get("text");
+        return new ElementSnapshot(Boolean.TRUE.equals(values.get("displayed")),
+                text == null ? "" : text.toString(),
+                attributes);
+    }
+
+    public boolean isDisplayed() {
+        return displayed;
+    }
+
+    public String getText() {
+        return text;
+    }
+
+    public String getAttribute(String name) {
+        return attributes.get(name);
+    }
+
+    public Map<String, String> getAttributes() {
+        return attributes;
+    }
+
+    @Override
+    public String toString() {
+        return (displayed ? "displayed" : "hidden") + ": " + text;
+    }
+}
@@ -1,32 +1,62 @@
 package nl.specialisterren.fitnesse.fixture.slim.web;
 
+import fitnesse.slim.fixtureInteraction.FixtureInteraction;
 import nl.hsac.fitnesse.fixture.slim.web.BrowserTest;
 import nl.hsac.fitnesse.fixture.slim.web.annotation.TimeoutPolicy;
 import nl.hsac.fitnesse.fixture.slim.web.annotation.WaitUntil;
 import nl.hsac.fitnesse.fixture.util.selenium.by.TechnicalSelectorBy;
+import nl.specialisterren.fitnesse.fixture.util.ArtifactWriter;
+import nl.specialisterren.fitnesse.fixture.util.PatternCache;
 import org.openqa.selenium.*;
 import org.openqa.selenium.interactions.Actions;
 
+import java.io.File;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
 import java.time.LocalDate;
 import java.time.format.DateTimeFormatter;
 import java.time.format.DateTimeParseException;
 import java.util.ArrayList;
-import java.util.LinkedList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Locale;
+import java.util.Map;
+import java.util.Objects;
+import java.util.WeakHashMap;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 import java.util.regex.PatternSyntaxException;
 
-import java.util.Calendar;
-import java.util.Date;
-import java.text.SimpleDateFormat;
-import java.text.ParseException;
-
 import nl.hsac.fitnesse.fixture.slim.SlimFixtureException;
 
 public class ExtendedBrowserTest extends BrowserTest {
-    private LinkedList<String> previousPropertyValues = new LinkedList<>();
+    private static final String NETWORK_IDLE_SCRIPT = "network-idle.js";
+    private static final String NETWORK_IDLE_INSTALL_SCRIPT = "network-idle-install.js";
+    private static final String ELEMENT_SNAPSHOT_SCRIPT = "element-snapshot.js";
+    private static final String GRID_COLUMN_SCRIPT = "grid-column.js";
+    private static final String PAGE_PERFORMANCE_SCRIPT = "page-performance.js";
+    private static final String STABLE_PROPERTIES_SCRIPT = "stable-properties.js";
+    // fixture methods after which page performance is collected automatically
+    private static final Pattern ACTION_PATTERN = Pattern.compile(
+            "(open|click|doubleClick|rightClick|enter|select|press|navigate|refresh|submit|goBack|dragAndDrop).*");
+    private static final String SORT_DATE_COLUMN = ".column-sortDate";
+    private static final Pattern WHITESPACE_PATTERN = Pattern.compile("\\s+");
+    // leave the browser some room to report back before WebDriver's own script timeout fires
+    private static final int SCRIPT_TIMEOUT_MARGIN = 1000;
+    // drivers that add the network idle instrumentation to each new document themselves
+    private static final Map<WebDriver, Boolean> INSTRUMENTED_DRIVERS = Collections.synchronizedMap(new WeakHashMap<>());
+
+    private boolean waitForNetworkIdleOnPendingRequestCheck = false;
+    private int networkQuietPeriod = 500;
+    private int maxTrackedTimerDelay = 1000;
+    private boolean collectPagePerformanceAfterActions = false;
+    private int pageLoadBudget = 0;
+    private int requestBudget = 0;
+    private ArrayList<String> valuesNotAsExpected = new ArrayList<>();
+    private int stabilityQuietPeriod = 300;
+    private Map<String, Object> lastStabilization = new LinkedHashMap<>();
 
 	public Object store(Object result) {
 		return result;
@@ -85,8 +115,210 @@ public class ExtendedBrowserTest extends BrowserTest {
                 .build().perform();
     }
 
+    /**
+     * Makes checkPendingRequests wait for network idle (see waitForNetworkIdle) with one browser call,
+     * instead of polling window.openHTTPs. A check fails when the page does not become idle before the timeout.
+     */
+    public void waitForNetworkIdleInPendingRequestChecks() {
+        waitForNetworkIdleOnPendingRequestCheck = true;
+        installNetworkIdleOnNewDocuments();
+    }
+
+    public void pollOpenRequestsInPendingRequestChecks() {
+        waitForNetworkIdleOnPendingRequestCheck = false;
+    }
+
+    public void setNetworkQuietPeriodToMilliseconds(int quietPeriod) {
+        networkQuietPeriod = quietPeriod;
+    }
+
+    public int networkQuietPeriod() {
+        return networkQuietPeriod;
+    }
+
+    /**
+     * @param maxDelay timers (setTimeout) with a delay up to this value count as pending work, longer ones
+     *                 (e.g. polling or session timers) are ignored.
+     */
+    public void setMaxTrackedTimerDelayToMilliseconds(int maxDelay) {
+        maxTrackedTimerDelay = maxDelay;
+    }
+
+    /**
+     * Waits until the page has no pending XMLHttpRequests, fetches or short timers for the network quiet period.
+     * All waiting happens inside the browser in a single (asynchronous) script call. Where the driver supports it
+     * (Chrome DevTools' Page.addScriptToEvaluateOnNewDocument) the instrumentation is added when each document is
+     * created; otherwise it is installed before each action and, at the latest, by this wait. A late install counts
+     * the requests Resource Timing still lists as in flight.
+     * @return true if the page became idle before the timeout, false otherwise.
+     */
+    public boolean waitForNetworkIdle() {
+        Map<?, ?> result = awaitNetworkIdle();
+        return result != null && Boolean.TRUE.equals(result.get("idle"));
+    }
+
+    /**
+     * @return result of network-idle.js (idle, pending and waited), null when WebDriver's script timeout fired first.
+     */
+    protected Map<?, ?> awaitNetworkIdle() {
+        installNetworkIdleOnNewDocuments();
+        int timeout = Math.max(secondsBeforeTimeout() * 1000 - SCRIPT_TIMEOUT_MARGIN, networkQuietPeriod);
+        String script = "var install = " + BrowserScripts.get(NETWORK_IDLE_INSTALL_SCRIPT) + ";\n"
+                + BrowserScripts.get(NETWORK_IDLE_SCRIPT);
+        try {
+            Object result = executeAsyncScript(script, networkQuietPeriod, maxTrackedTimerDelay, timeout);
+            return result instanceof Map ? (Map<?, ?>) result : null;
+        } catch (ScriptTimeoutException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Installs the network idle instrumentation in the current document, so requests started by the next action
+     * are counted even when the document was not instrumented at creation.
+     */
+    protected void installNetworkIdle() {
+        installNetworkIdleOnNewDocuments();
+        executeScript("(" + BrowserScripts.get(NETWORK_IDLE_INSTALL_SCRIPT) + ")(window, arguments[0]);",
+                maxTrackedTimerDelay);
+    }
+
+    /**
+     * Asks the browser to install the network idle instrumentation before any script of each new document runs,
+     * using the driver's executeCdpCommand (Chromium drivers of Selenium versions offering it). Other drivers keep
+     * relying on installNetworkIdle().
+     */
+    protected void installNetworkIdleOnNewDocuments() {
+        WebDriver driver = getSeleniumHelper().driver();
+        while (driver instanceof WrapsDriver) {
+            driver = ((WrapsDriver) driver).getWrappedDriver();
+        }
+        if (driver == null || INSTRUMENTED_DRIVERS.containsKey(driver)) {
+            return;
+        }
+        boolean installed = false;
+        try {
+            Method cdp = driver.getClass().getMethod("executeCdpCommand", String.class, Map.class);
+            Map<String, Object> parameters = new LinkedHashMap<>();
+            parameters.put("source", "(" + BrowserScripts.get(NETWORK_IDLE_INSTALL_SCRIPT) + ")(window, "
+                    + maxTrackedTimerDelay + ");");
+            cdp.invoke(driver, "Page.addScriptToEvaluateOnNewDocument", parameters);
+            installed = true;
+        } catch (NoSuchMethodException | IllegalAccessException e) {
+            // driver has no DevTools access
+        } catch (InvocationTargetException e) {
+            // e.g. a remote browser that is not Chromium
+        }
+        INSTRUMENTED_DRIVERS.put(driver, installed);
+    }
+
+    protected Object executeScript(String script, Object... arguments) {
+        return ((JavascriptExecutor) getSeleniumHelper().driver()).executeScript(script, arguments);
+    }
+
+    protected Object executeAsyncScript(String script, Object... arguments) {
+        return ((JavascriptExecutor) getSeleniumHelper().driver()).executeAsyncScript(script, arguments);
+    }
+
+    /**
+     * Collects Navigation Timing (once per document), XHR/fetch Resource Timing and long tasks since the previous
+     * collection, in one script call, and adds them to the page performance statistics of label
+     * (see PagePerformance).
+     * @param label page or action the durations are reported for.
+     * @return load times, number of requests and slowest request, and long tasks.
+     * @throws SlimFixtureException when the page load or a request took longer than its budget.
+     */
+    public Map<String, Object> collectPagePerformanceAs(String label) {
+        PagePerformance.Capture capture = PagePerformance.Capture.fromScriptResult(
+                executeScript(BrowserScripts.get(PAGE_PERFORMANCE_SCRIPT)));
+        PagePerformance.record(label, capture);
+        if (pageLoadBudget > 0 && capture.getLoad() != null && capture.getLoad() > pageLoadBudget) {
+            throw new SlimFixtureException(false, "Page load of " + label + " took " + capture.getLoad().intValue()
+                    + " ms, budget is " + pageLoadBudget + " ms");
+        }
+        Map.Entry<String, Double> slowest = capture.getSlowestRequest();
+        if (requestBudget > 0 && slowest != null && slowest.getValue() > requestBudget) {
+            throw new SlimFixtureException(false, "Request " + slowest.getKey() + " (" + label + ") took "
+                    + slowest.getValue().intValue() + " ms, budget is " + requestBudget + " ms");
+        }
+        return capture.toMap();
+    }
+
+    /**
+     * Collects page performance after each action (open, click, enter, select and so on), labelled with the
+     * action and its first argument. An action exceeding a budget fails.
+     */
+    public void collectPagePerformanceAfterEachAction() {
+        collectPagePerformanceAfterActions = true;
+    }
+
+    public void stopCollectingPagePerformanceAfterEachAction() {
+        collectPagePerformanceAfterActions = false;
+    }
+
+    /**
+     * @param budget maximum load time of a page (0 for none).
+     */
+    public void setPageLoadBudgetToMilliseconds(int budget) {
+        pageLoadBudget = budget;
+    }
+
+    /**
+     * @param budget maximum duration of an XHR or fetch (0 for none).
+     */
+    public void setRequestBudgetToMilliseconds(int budget) {
+        requestBudget = budget;
+    }
+
+    /**
+     * @param label label prefixed with 'load ', 'xhr ' or 'long task '.
+     * @return count and percentiles (ms) of the durations collected for label, by all fixtures so far.
+     */
+    public Map<String, Object> pagePerformanceOf(String label) {
+        return PagePerformance.summary(label);
+    }
+
+    public double percentileOfPagePerformanceOf(double percentile, String label) {
+        return PagePerformance.percentile(label, percentile);
+    }
+
+    public void writePagePerformance() {
+        PagePerformance.write();
+    }
+
+    @Override
+    protected Object invoke(FixtureInteraction interaction, Method method, Object[] arguments) throws Throwable {
+        boolean action = ACTION_PATTERN.matcher(method.getName()).matches();
+        if (action && waitForNetworkIdleOnPendingRequestCheck && getSeleniumHelper().driver() != null) {
+            try {
+                installNetworkIdle();
+            } catch (WebDriverException e) {
+                // e.g. an alert is showing, the next wait installs it
+            }
+        }
+        Object result = super.invoke(interaction, method, arguments);
+        if (collectPagePerformanceAfterActions && action) {
+            String label = arguments == null || arguments.length == 0
+                    ? method.getName() : method.getName() + " " + arguments[0];
+            try {
+                collectPagePerformanceAs(label);
+            } catch (WebDriverException e) {
+                // e.g. an alert is showing, the action itself succeeded
+            }
+        }
+        return result;
+    }
+
     @WaitUntil
     public void checkPendingRequests() {
+        if (waitForNetworkIdleOnPendingRequestCheck) {
+            Map<?, ?> result = awaitNetworkIdle();
+            if (result == null || !Boolean.TRUE.equals(result.get("idle"))) {
+                throw new SlimFixtureException(false, "Page did not become idle within " + secondsBeforeTimeout()
+                        + " seconds" + (result == null ? "" : ", pending requests and timers: " + result.get("pending")));
+            }
+            return;
+        }
         int maxQuite = 0;
         for(int breakOut=0;breakOut<1200;breakOut++) {
             waitMilliseconds(5);
@@ -147,8 +379,6 @@ public class ExtendedBrowserTest extends BrowserTest {
 
     /**
      * Checks if the dates in all visible (on page) elements matching place compare as specified within the timeout.
-     * Warning: this method may scroll elements into view, make sure that any subsequent actions do not depend on
-     * scroll position!
      * @param place a technical selector (i.e. starting with id=, css=, xpath=, name=, link=, partialLink=).
      * @param regex a regex that matches the dd-MM-yyyy to be converted as capture group 1.
      * @param comparison the way the matching numbers should be compared (possibilities: < <= == >= >).
@@ -165,23 +395,20 @@ public class ExtendedBrowserTest extends BrowserTest {
         } catch (DateTimeParseException e) {
             throw new RuntimeException("Unable to convert compareWith parameter (\"" + compareWith + "\") to LocalDate!", e);
         }
-        List<WebElement> matchingElements = getSeleniumHelper().findElements(TechnicalSelectorBy.forPlace(place));
-        List<WebElement> visibleMatchingElements = displayedElementsOf(matchingElements);
+        List<ElementSnapshot> visibleMatchingElements = displayedSnapshotsOf(place);
         if (visibleMatchingElements.size() == 0) {
             return false;
         }
         Pattern matchedWith;
         try {
-            matchedWith = Pattern.compile(regex);
+            matchedWith = PatternCache.get(regex);
         } catch (PatternSyntaxException e) {
             throw new RuntimeException("Unable to compile regex parameter (\"" + regex + "\") to Pattern!", e);
         }
-        for (WebElement e : visibleMatchingElements) {
-            String elementText = getSeleniumHelper().getText(e);
+        for (ElementSnapshot e : visibleMatchingElements) {
+            String elementText = e.getText();
             if (elementText.isEmpty()) {
-                // Elements that are not in the viewport sometimes incorrectly return an empty string
-                // As a workaround, scroll them into view to get their true contents
-                scrollTo(e);
+                // The element is displayed but not rendered completely yet, keep waiting
                 return false;
             }
             Matcher m = matchedWith.matcher(elementText);
@@ -219,49 +446,246 @@ public class ExtendedBrowserTest extends BrowserTest {
     }
 
     protected List<WebElement> displayedElementsOf(List<WebElement> elements) {
+        List<ElementSnapshot> snapshots = snapshotOf(elements);
         List<WebElement> visibleElements = new ArrayList<>();
-        for (WebElement e : elements) {
-            if (e.isDisplayed()) {
-                visibleElements.add(e);
+        for (int i = 0; i < snapshots.size(); i++) {
+            if (snapshots.get(i).isDisplayed()) {
+                visibleElements.add(elements.get(i));
             }
         }
         return visibleElements;
     }
 
+    /**
+     * @param place a technical selector (i.e. starting with id=, css=, xpath=, name=, link=, partialLink=).
+     * @return the rendered text of every visible element matching place.
+     */
+    public ArrayList<String> displayedTextsOf(String place) {
+        ArrayList<String> texts = new ArrayList<>();
+        for (ElementSnapshot snapshot : displayedSnapshotsOf(place)) {
+            texts.add(snapshot.getText());
+        }
+        return texts;
+    }
+
+    /**
+     * @param attribute name of the attribute, e.g. <code>href</code>.
+     * @param place a technical selector (i.e. starting with id=, css=, xpath=, name=, link=, partialLink=).
+     * @return the value of attribute of every visible element matching place (null where it is absent).
+     */
+    public ArrayList<String> displayedValuesOfAttributeOf(String attribute, String place) {
+        ArrayList<String> values = new ArrayList<>();
+        for (ElementSnapshot snapshot : displayedSnapshotsOf(place, attribute)) {
+            values.add(snapshot.getAttribute(attribute));
+        }
+        return values;
+    }
+
+    /**
+     * Captures all elements matching place in a single script execution (see snapshotOf).
+     * @param place a technical selector (i.e. starting with id=, css=, xpath=, name=, link=, partialLink=).
+     * @param attributes comma separated names of the attributes to capture.
+     * @return per matching element, in document order: whether it is displayed, its rendered text and
+     * the value of each attribute.
+     */
+    public ArrayList<Map<String, Object>> snapshotOfWithAttributes(String place, String attributes) {
+        String[] names = attributes == null || attributes.trim().isEmpty()
+                ? new String[0] : attributes.trim().split("\\s*,\\s*");
+        ArrayList<Map<String, Object>> rows = new ArrayList<>();
+        for (ElementSnapshot snapshot : snapshotOf(place, names)) {
+            Map<String, Object> row = new LinkedHashMap<>();
+            row.put("displayed", snapshot.isDisplayed());
+            row.put("text", snapshot.getText());
+            for (String name : names) {
+                row.put(name, snapshot.getAttribute(name));
+            }
+            rows.add(row);
+        }
+        return rows;
+    }
+
+    protected List<ElementSnapshot> displayedSnapshotsOf(String place, String... attributes) {
+        List<ElementSnapshot> displayed = new ArrayList<>();
+        for (ElementSnapshot snapshot : snapshotOf(place, attributes)) {
+            if (snapshot.isDisplayed()) {
+                displayed.add(snapshot);
+            }
+        }
+        return displayed;
+    }
+
+    /**
+     * Captures visibility, rendered text and the requested attributes of all elements matching place,
+     * using a single script execution instead of separate calls per element.
+     * @param place a technical selector (i.e. starting with id=, css=, xpath=, name=, link=, partialLink=).
+     * @param attributes names of the attributes to capture.
+     * @return one snapshot per matching element, in document order.
+     */
+    protected List<ElementSnapshot> snapshotOf(String place, String... attributes) {
+        return snapshotOf(getSeleniumHelper().findElements(TechnicalSelectorBy.forPlace(place)), attributes);
+    }
+
+    protected List<ElementSnapshot> snapshotOf(List<WebElement> elements, String... attributes) {
+        if (elements == null || elements.isEmpty()) {
+            return Collections.emptyList();
+        }
+        Object result = executeScript(BrowserScripts.get(ELEMENT_SNAPSHOT_SCRIPT), elements, Arrays.asList(attributes));
+        List<ElementSnapshot> snapshots = new ArrayList<>(elements.size());
+        for (Object item : (List<?>) result) {
+            snapshots.add(ElementSnapshot.fromScriptResult(item));
+        }
+        return snapshots;
+    }
+
     /**
      * Waits until the specified property of the specified element becomes stable.
-     * This method checks if the property has the same value three times in a row while polling with the WaitUntil
-     * interval.
      * @param property the name of the property to check for stability, e.g. <code>scrollTop</code>.
      * @param place a technical selector (i.e. starting with id=, css=, xpath=, name=, link=, partialLink=).
-     * @return true if the property has the same value three times in a row, false otherwise.
+     * @return true if the property did not change for the stability quiet period.
+     * @see #waitUntilPropertiesOfElementsAreStable(ArrayList, String)
      */
-    @WaitUntil
     public boolean waitUntilPropertyOfElementIsStable(String property, String place) {
-        WebElement e = getSeleniumHelper().findElement(TechnicalSelectorBy.forPlace(place));
-        if (e == null) {
-            // If the element is not there (yet), just return false so we keep waiting
-            return false;
+        return waitUntilPropertiesOfElementsAreStable(new ArrayList<>(Collections.singletonList(property)), place);
+    }
+
+    /**
+     * Waits until the properties of all elements matching place have not changed for the stability quiet period.
+     * The waiting happens in the browser, in one (asynchronous) script call, sampling the properties every animation
+     * frame and watching the elements for mutations. Afterwards lastStabilization reports how long settling took.
+     * Not a WaitUntil method: the script waits itself, so a retry would wait for the timeout again. Only when the
+     * elements are not there (yet) or are replaced while waiting, the script is started again, for the time left.
+     * @param properties names of the properties to check, e.g. <code>scrollTop, offsetHeight</code>.
+     * @param place a technical selector (i.e. starting with id=, css=, xpath=, name=, link=, partialLink=).
+     * @return true if the properties became stable before the timeout, false otherwise.
+     */
+    public boolean waitUntilPropertiesOfElementsAreStable(ArrayList<String> properties, String place) {
+        long deadline = System.currentTimeMillis() + secondsBeforeTimeout() * 1000L;
+        while (true) {
+            List<WebElement> elements = elementsAtIn(place, null);
+            if (!elements.isEmpty()) {
+                long timeLeft = deadline - System.currentTimeMillis();
+                int timeout = (int) Math.max(timeLeft - SCRIPT_TIMEOUT_MARGIN, stabilityQuietPeriod);
+                try {
+                    Object result = executeAsyncScript(BrowserScripts.get(STABLE_PROPERTIES_SCRIPT),
+                            elements, properties, stabilityQuietPeriod, timeout);
+                    lastStabilization = new LinkedHashMap<>();
+                    if (result instanceof Map) {
+                        for (Map.Entry<?, ?> entry : ((Map<?, ?>) result).entrySet()) {
+                            lastStabilization.put(String.valueOf(entry.getKey()), entry.getValue());
+                        }
+                    }
+                    return Boolean.TRUE.equals(lastStabilization.get("stable"));
+                } catch (ScriptTimeoutException e) {
+                    return false;
+                } catch (StaleElementReferenceException e) {
+                    // element was replaced while waiting, wait for the new one
+                }
+            }
+            if (System.currentTimeMillis() >= deadline) {
+                return false;
+            }
+            waitMilliseconds(100);
         }
+    }
 
-        String currentValue = getSeleniumHelper().executeJavascript("return arguments[0][arguments[1]]", e, property).toString();
+    /**
+     * @param quietPeriod time properties must not change to be considered stable.
+     */
+    public void setStabilityQuietPeriodToMilliseconds(int quietPeriod) {
+        stabilityQuietPeriod = quietPeriod;
+    }
 
-        if (previousPropertyValues.size() == 2
-                && previousPropertyValues.getFirst().equals(previousPropertyValues.getLast())
-                && currentValue.equals(previousPropertyValues.getLast())) {
-            System.out.println("Property \"" + property + "\" of element " + e + " became stable at value: " + currentValue);
-            previousPropertyValues.clear();
-            return true;
-        } else {
-            previousPropertyValues.addLast(currentValue);
-            if (previousPropertyValues.size() > 2) {
-                previousPropertyValues.removeFirst();
+    /**
+     * @return result of the last stability wait: stable, waited (ms), settledAfter (ms since start of the wait of
+     * the last change), changes (number of changes seen) and values (last values, per element per property).
+     */
+    public Map<String, Object> lastStabilization() {
+        return lastStabilization;
+    }
+
+    /**
+     * Brings the browser back to a clean state without restarting it: closes all windows but the first, clears local
+     * and session storage and deletes the cookies of the current site, and opens a blank page.
+     * @throws WebDriverException when the browser does not respond.
+     */
+    public void resetBrowserSession() {
+        WebDriver driver = getSeleniumHelper().driver();
+        List<String> handles = new ArrayList<>(driver.getWindowHandles());
+        for (int i = 1; i < handles.size(); i++) {
+            driver.switchTo().window(handles.get(i));
+            driver.close();
+        }
+        driver.switchTo().window(handles.get(0));
+        try {
+            executeScript("if (window.localStorage) { localStorage.clear(); }"
+                    + " if (window.sessionStorage) { sessionStorage.clear(); }");
+        } catch (WebDriverException e) {
+            // pages like about:blank have no storage
+        }
+        driver.manage().deleteAllCookies();
+        driver.get("about:blank");
+        clearSearchContext();
+    }
+
+    /**
+     * Hands the screenshot to the ArtifactWriter, so the next row does not wait for it to be encoded and written.
+     * Like hsac's, it only returns null when no screenshot could be taken: over the artifact budget the path of a
+     * placeholder image is returned.
+     */
+    @Override
+    protected String createScreenshot(String basename, Throwable t) {
+        ArtifactWriter writer = ArtifactWriter.getInstance();
+        if (!writer.isEnabled()) {
+            return super.createScreenshot(basename, t);
+        }
+        try {
+            byte[] png = getSeleniumHelper().findScreenshot(t);
+            if (png == null || png.length == 0) {
+                png = ((TakesScreenshot) getSeleniumHelper().driver()).getScreenshotAs(OutputType.BYTES);
             }
-            System.out.println("Waiting for property \"" + property + "\" of element " + e + " to become stable. Current value: " + currentValue);
-            return false;
+            return writer.writeImage(artifactDir("screenshots"), basename, png);
+        } catch (WebDriverException e) {
+            return super.createScreenshot(basename, t);
         }
     }
 
+    /**
+     * Hands the page source to the ArtifactWriter. Only the main document is saved (not the content of its frames).
+     */
+    @Override
+    protected String savePageSource(String fileName, String linkText) {
+        ArtifactWriter writer = ArtifactWriter.getInstance();
+        if (!writer.isEnabled()) {
+            return super.savePageSource(fileName, linkText);
+        }
+        String name = fileName.endsWith(".html") ? fileName : fileName + ".html";
+        String file = writer.writeText(artifactDir("pagesources"), name, getSeleniumHelper().driver().getPageSource());
+        if (file == null) {
+            return linkText + " (not saved, artifact budget exceeded)";
+        }
+        return String.format("<a href=\"%s\" target=\"_blank\">%s</a>", getWikiUrl(file), linkText);
+    }
+
+    private File artifactDir(String name) {
+        return new File(getEnvironment().getFitNesseFilesSectionDir(), name);
+    }
+
+    /**
+     * Waits until all screenshots and page sources captured so far are written (called by the GUI SuiteTearDown
+     * pages).
+     * @throws SlimFixtureException listing the captures that could not be written.
+     */
+    public void flushArtifacts() {
+        List<String> problems = ArtifactWriter.getInstance().flush();
+        if (!problems.isEmpty()) {
+            throw new SlimFixtureException(false, "Not all artifacts were written: " + String.join(", ", problems));
+        }
+    }
+
+    public Map<String, Object> artifactStatistics() {
+        return ArtifactWriter.getInstance().statistics();
+    }
+
     @Override
     public boolean switchToNextTab() {
         List<String> tabs = getTabHandles();
@@ -297,25 +721,92 @@ public class ExtendedBrowserTest extends BrowserTest {
 	}
 	
     public ArrayList<String> sortDatesOfIn(String place, String container) {
+        return valuesInColumnOfIn(SORT_DATE_COLUMN, place, container);
+    }
+
+    /**
+     * Retrieves the text of one column for all visible rows of a table, in a single browser call.
+     * @param column CSS selector of the cell within a row, e.g. <code>.column-sortDate</code>.
+     * @param place the table (or an element containing it).
+     * @return text of the column for each visible row (null for rows without such a cell), or null if no table body
+     * could be found.
+     */
+    public ArrayList<String> valuesInColumnOf(String column, String place) {
+        return valuesInColumnOfIn(column, place, null);
+    }
+
+    public ArrayList<String> valuesInColumnOfIn(String column, String place, String container) {
         ArrayList<String> values = null;
         WebElement element = getElementToRetrieveValue(place, container);
-		if (element != null) {
-			element = element.findElement(By.tagName("tbody"));
-			if (element != null) {
-				values = new ArrayList<String>();
-				String tagName = element.getTagName();
-				if ("tbody".equalsIgnoreCase(tagName)) {
-					List<WebElement> items = element.findElements(By.tagName("tr"));
-					for (WebElement item : items) {
-						if (item.isDisplayed()) {
-							values.add(getSortDate(item));
-						}
-					}
-				}
-			}
-		}
+        if (element != null) {
+            Object result = executeScript(BrowserScripts.get(GRID_COLUMN_SCRIPT), element, column);
+            if (result instanceof List) {
+                values = new ArrayList<>();
+                for (Object value : (List<?>) result) {
+                    values.add(value == null ? null : value.toString());
+                }
+            }
+        }
         return values;
     }
+
+    /**
+     * Checks the order of a table column, in a single browser call.
+     * @param column CSS selector of the cell within a row, e.g. <code>.column-sortDate</code>.
+     * @param place the table (or an element containing it).
+     * @param order ascending or descending (oplopend or aflopend).
+     * @param type type of the values (see ColumnValues), e.g. date, datetime:dd-MM-yyyy HH:mm, number or text.
+     * @return true if the column contains values, and all of them are in the specified order (empty cells
+     * are skipped).
+     */
+    public boolean valuesInColumnOfSortedAs(String column, String place, String order, String type) {
+        List<Comparable<?>> values = typedValuesInColumnOf(column, place, type);
+        return values != null && values.stream().anyMatch(Objects::nonNull)
+                && ColumnValues.firstOutOfOrder(values, order) < 0;
+    }
+
+    /**
+     * Checks all values of a table column against a value, in a single browser call.
+     * @param comparison one of < <= == >= >.
+     * @return true if the column contains values, and all of them compare as specified (an empty cell does not).
+     */
+    public boolean valuesInColumnOfAreComparedToAs(String column, String place, String comparison, String value, String type) {
+        Comparable<?> expected = ColumnValues.parse(value, type);
+        List<Comparable<?>> values = typedValuesInColumnOf(column, place, type);
+        if (values == null || values.isEmpty()) {
+            return false;
+        }
+        for (Comparable<?> actual : values) {
+            if (!ColumnValues.compare(actual, comparison, expected)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Checks all values of a table column are within a range (inclusive), in a single browser call.
+     * @return true if the column contains values, and all of them are between min and max (an empty cell is not).
+     */
+    public boolean valuesInColumnOfBetweenAndAs(String column, String place, String min, String max, String type) {
+        Comparable<?> lower = ColumnValues.parse(min, type);
+        Comparable<?> upper = ColumnValues.parse(max, type);
+        List<Comparable<?>> values = typedValuesInColumnOf(column, place, type);
+        if (values == null || values.isEmpty()) {
+            return false;
+        }
+        for (Comparable<?> actual : values) {
+            if (actual == null || ColumnValues.compare(actual, lower) < 0 || ColumnValues.compare(actual, upper) > 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    protected List<Comparable<?>> typedValuesInColumnOf(String column, String place, String type) {
+        List<String> texts = valuesInColumnOf(column, place);
+        return texts == null ? null : ColumnValues.parse(texts, type);
+    }
 	
 	public String listAllSortDatesOfIn(String place, String container) {
         String result = null;
@@ -339,44 +830,11 @@ public class ExtendedBrowserTest extends BrowserTest {
 	}
 	
 	public ArrayList<String> sortDatesOf(String list) {
-		ArrayList<String> values = new ArrayList<String>();
-		Pattern pattern = Pattern.compile("<li>.+?</li>");
-		Matcher matcher = pattern.matcher(list);
-		while (matcher.find())
-		{
-			String item = matcher.group();
-			Pattern p = Pattern.compile("<li>(\\d{2}-\\d{2}-\\d{4}) .+?(\\n.+?)*?</li>");
-			Matcher m = p.matcher(item);
-			if (m.find())
-				values.add(m.group(1));
-		}
-		return values;
+		return SortDateList.sortDatesOf(list);
 	}
 	
-	public ArrayList<Boolean> datesAreDate(String list, String comparison, String date2) throws ParseException {
-		ArrayList<Boolean> result = new ArrayList<Boolean>();
-		ArrayList<String> dates = sortDatesOf(list);
-		Date dateToCompare2 = new SimpleDateFormat("dd-MM-yyyy").parse(date2); 
-			
-		for (String date : dates) {
-			Date dateToCompare1 = new SimpleDateFormat("dd-MM-yyyy").parse(date); 
-			
-			switch (comparison) {
-				case ">=":
-					result.add(dateToCompare1.after(dateToCompare2) || dateToCompare1.equals(dateToCompare2));
-					break;
-
-				case "==":
-					result.add(dateToCompare1.equals(dateToCompare2));
-					break;
-					
-				default:
-					result.add(false);
-			}
-			
-		}
-		
-		return result;
+	public ArrayList<Boolean> datesAreDate(String list, String comparison, String date2) {
+		return SortDateList.datesAreDate(list, comparison, date2);
 	}
 	
 	public Boolean listAllTrue(ArrayList<Boolean> list) {
@@ -390,7 +848,7 @@ public class ExtendedBrowserTest extends BrowserTest {
 	
 	public ArrayList<String> valuesOfMatching(ArrayList<String> values, String regex) {
 		ArrayList<String> result = new ArrayList<String>();
-		Pattern p = Pattern.compile(regex);
+		Pattern p = PatternCache.get(regex);
 			
 		for(String value : values) {
 			Matcher m = p.matcher(value);
@@ -409,16 +867,118 @@ public class ExtendedBrowserTest extends BrowserTest {
 
 	@WaitUntil(TimeoutPolicy.RETURN_FALSE)
     public boolean waitForNotVisibleAt(String place, ArrayList<String> values) {
-        return !waitForVisibleAtIn(place, values, null);
+        return waitForNotVisibleAtIn(place, values, null);
     }
-	
+
+    /**
+     * Waits until, for each value, a visible element matching place has a text starting with that value. All values
+     * are checked with one element query and one script call per poll when place is a technical selector; other
+     * places are looked up per value by hsac, as before. Afterwards valuesNotAsExpected lists the values that were
+     * not visible.
+     * @param place a technical selector (i.e. starting with id=, css=, xpath=, name=, link=, partialLink=), or an
+     *              XPath to which hsac can add a starts-with(normalize-space(), value) condition.
+     * @param values texts the elements must start with (whitespace normalised, like XPath's normalize-space()).
+     * @param container container to search in, null for the whole page.
+     * @return true if all values are visible within the timeout.
+     */
     @WaitUntil(TimeoutPolicy.RETURN_FALSE)
     public boolean waitForVisibleAtIn(String place, ArrayList<String> values, String container) {
-        Boolean result = Boolean.TRUE;
-		for (String value : values) {
-			result = result && waitForVisibleIn(place + "[starts-with(normalize-space(), '" + value + "')]", container);
-		}
-		return result;
+        valuesNotAsExpected = valuesNotVisibleAtIn(place, values, container);
+        return valuesNotAsExpected.isEmpty();
+    }
+
+    /**
+     * Waits until none of the values is visible at place (see waitForVisibleAtIn). Afterwards valuesNotAsExpected
+     * lists the values that were still visible.
+     */
+    @WaitUntil(TimeoutPolicy.RETURN_FALSE)
+    public boolean waitForNotVisibleAtIn(String place, ArrayList<String> values, String container) {
+        List<String> notVisible = valuesNotVisibleAtIn(place, values, container);
+        valuesNotAsExpected = new ArrayList<>(values);
+        valuesNotAsExpected.removeAll(notVisible);
+        return valuesNotAsExpected.isEmpty();
+    }
+
+    /**
+     * @return values that were not visible (or still visible, for the not visible waits) in the last wait for
+     * visible at.
+     */
+    public ArrayList<String> valuesNotAsExpected() {
+        return valuesNotAsExpected;
+    }
+
+    /**
+     * @return the values for which no visible element matching place (in container) has a text starting with it.
+     */
+    public ArrayList<String> valuesNotVisibleAtIn(String place, List<String> values, String container) {
+        ArrayList<String> missing = new ArrayList<>();
+        if (TechnicalSelectorBy.forPlace(place) == null) {
+            // hsac matches these on the XPath string value (normalize-space), not on the visible text (innerText)
+            for (String value : values) {
+                if (!waitForVisibleIn(place + "[starts-with(normalize-space(), " + xPathLiteral(value) + ")]",
+                        container)) {
+                    missing.add(value);
+                }
+            }
+            return missing;
+        }
+        List<String> texts = new ArrayList<>();
+        for (ElementSnapshot snapshot : snapshotOf(elementsAtIn(place, container))) {
+            if (snapshot.isDisplayed()) {
+                texts.add(WHITESPACE_PATTERN.matcher(snapshot.getText()).replaceAll(" ").trim());
+            }
+        }
+        for (String value : values) {
+            boolean found = false;
+            for (String text : texts) {
+                if (text.startsWith(value)) {
+                    found = true;
+                    break;
+                }
+            }
+            if (!found) {
+                missing.add(value);
+            }
+        }
+        return missing;
+    }
+
+    /**
+     * @return value as an XPath string literal, using concat() when it contains both quote characters.
+     */
+    static String xPathLiteral(String value) {
+        if (value.indexOf('\'') < 0) {
+            return "'" + value + "'";
+        }
+        if (value.indexOf('"') < 0) {
+            return '"' + value + '"';
+        }
+        return "concat('" + value.replace("'", "', \"'\", '") + "')";
+    }
+
+    /**
+     * @return the elements matching a technical selector place (in container), or for other places the element
+     * hsac finds for it.
+     */
+    protected List<WebElement> elementsAtIn(String place, String container) {
+        if (TechnicalSelectorBy.forPlace(place) == null) {
+            WebElement element = getElementToRetrieveValue(place, container);
+            return element == null ? Collections.emptyList() : Collections.singletonList(element);
+        }
+        WebElement containerElement = null;
+        String selector = place;
+        if (container != null) {
+            containerElement = getElementToRetrieveValue(container, null);
+            if (containerElement == null) {
+                return Collections.emptyList();
+            }
+            // an absolute XPath would search the whole page instead of the container
+            if (place.startsWith("xpath=/")) {
+                selector = "xpath=." + place.substring("xpath=".length());
+            }
+        }
+        By by = TechnicalSelectorBy.forPlace(selector);
+        return containerElement == null ? getSeleniumHelper().findElements(by) : containerElement.findElements(by);
     }
 	
 	public int getNumberOfTabs() {
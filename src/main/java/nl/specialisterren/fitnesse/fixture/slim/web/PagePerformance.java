@@ -0,0 +1,178 @@
+package nl.specialisterren.fitnesse.fixture.slim.web;
+
+import nl.specialisterren.fitnesse.fixture.util.LatencyStatistics;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.AbstractMap;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Page load, XHR/fetch and long task durations captured by ExtendedBrowserTest, aggregated per label (page or action)
+ * for all fixtures in the JVM. When the JVM stops, percentiles per label are written to page-performance.csv in the
+ * directory in system property <code>pagePerformance.dir</code>, by default the FitNesse results directory.
+ * Labels are prefixed with the kind of measurement: 'load', 'xhr' and 'long task'.
+ */
+public final class PagePerformance {
+    private static final LatencyStatistics STATISTICS = new LatencyStatistics();
+    private static final AtomicBoolean STARTED = new AtomicBoolean();
+
+    /**
+     * Durations captured by one script call.
+     */
+    public static final class Capture {
+        private final String page;
+        private final Double load;
+        private final Double domContentLoaded;
+        private final Double firstByte;
+        private final List<Map.Entry<String, Double>> requests;
+        private final List<Double> longTasks;
+
+        private Capture(String page, Double load, Double domContentLoaded, Double firstByte,
+                        List<Map.Entry<String, Double>> requests, List<Double> longTasks) {
+            this.page = page;
+            this.load = load;
+            this.domContentLoaded = domContentLoaded;
+            this.firstByte = firstByte;
+            this.requests = requests;
+            this.longTasks = longTasks;
+        }
+
+        static Capture fromScriptResult(Object scriptResult) {
+            if (!(scriptResult instanceof Map)) {
+                return new Capture("", null, null, null, Collections.emptyList(), Collections.emptyList());
+            }
+            Map<?, ?> values = (Map<?, ?>) scriptResult;
+            Map<?, ?> navigation = values.get("navigation") instanceof Map ? (Map<?, ?>) values.get("navigation") : null;
+            List<Map.Entry<String, Double>> requests = new ArrayList<>();
+            if (values.get("requests") instanceof List) {
+                for (Object request : (List<?>) values.get("requests")) {
+                    Map<?, ?> r = (Map<?, ?>) request;
+                    requests.add(new AbstractMap.SimpleImmutableEntry<>(
+                            String.valueOf(r.get("url")), toDouble(r.get("duration"))));
+                }
+            }
+            List<Double> longTasks = new ArrayList<>();
+            if (values.get("longTasks") instanceof List) {
+                for (Object duration : (List<?>) values.get("longTasks")) {
+                    longTasks.add(toDouble(duration));
+                }
+            }
+            return new Capture(String.valueOf(values.get("page")),
+                    navigation == null ? null : toDouble(navigation.get("load")),
+                    navigation == null ? null : toDouble(navigation.get("domContentLoaded")),
+                    navigation == null ? null : toDouble(navigation.get("firstByte")),
+                    requests, longTasks);
+        }
+
+        private static Double toDouble(Object value) {
+            return value instanceof Number ? ((Number) value).doubleValue() : 0.0;
+        }
+
+        /**
+         * @return load time (ms) of the document, null if it was already reported or is not loaded yet.
+         */
+        public Double getLoad() {
+            return load;
+        }
+
+        /**
+         * @return the slowest XHR/fetch (url and duration in ms), null if there were none.
+         */
+        public Map.Entry<String, Double> getSlowestRequest() {
+            Map.Entry<String, Double> slowest = null;
+            for (Map.Entry<String, Double> request : requests) {
+                if (slowest == null || request.getValue() > slowest.getValue()) {
+                    slowest = request;
+                }
+            }
+            return slowest;
+        }
+
+        public Map<String, Object> toMap() {
+            Map<String, Object> map = new LinkedHashMap<>();
+            map.put("page", page);
+            if (load != null) {
+                map.put("firstByte", round(firstByte));
+                map.put("domContentLoaded", round(domContentLoaded));
+                map.put("load", round(load));
+            }
+            map.put("requests", requests.size());
+            Map.Entry<String, Double> slowest = getSlowestRequest();
+            if (slowest != null) {
+                map.put("slowestRequest", round(slowest.getValue()));
+                map.put("slowestRequestUrl", slowest.getKey());
+            }
+            double longTaskTotal = 0;
+            for (Double duration : longTasks) {
+                longTaskTotal += duration;
+            }
+            map.put("longTasks", longTasks.size());
+            map.put("longTaskTotal", round(longTaskTotal));
+            return map;
+        }
+
+        private static double round(double value) {
+            return Math.round(value * 10) / 10.0;
+        }
+    }
+
+    private PagePerformance() {
+    }
+
+    /**
+     * Adds the durations of a capture to the statistics of label.
+     */
+    static void record(String label, Capture capture) {
+        if (STARTED.compareAndSet(false, true)) {
+            STATISTICS.start();
+            Runtime.getRuntime().addShutdownHook(new Thread(PagePerformance::write, "page-performance"));
+        }
+        if (capture.load != null) {
+            STATISTICS.record("load " + label, nanos(capture.load), true);
+        }
+        for (Map.Entry<String, Double> request : capture.requests) {
+            STATISTICS.record("xhr " + label, nanos(request.getValue()), true);
+        }
+        for (Double duration : capture.longTasks) {
+            STATISTICS.record("long task " + label, nanos(duration), true);
+        }
+    }
+
+    private static long nanos(double millis) {
+        return (long) (millis * TimeUnit.MILLISECONDS.toNanos(1));
+    }
+
+    /**
+     * @param label e.g. 'load Zoeken' or 'xhr click Zoek', null for all measurements together.
+     * @return count and percentiles (ms) of label.
+     */
+    public static Map<String, Object> summary(String label) {
+        return STATISTICS.summary(label);
+    }
+
+    public static double percentile(String label, double percentile) {
+        return STATISTICS.percentile(label, percentile);
+    }
+
+    /**
+     * Writes the percentiles per label as CSV.
+     */
+    public static synchronized void write() {
+        String dir = System.getProperty("pagePerformance.dir",
+                System.getProperty("fitnesseResultsDir", "target/fitnesse-results"));
+        File file = new File(dir, "page-performance.csv");
+        try {
+            STATISTICS.writeCsv(file);
+        } catch (IOException e) {
+            // measurements must never fail a test
+            System.err.println("Unable to write page performance to: " + file + ": " + e);
+        }
+    }
+}
@@ -0,0 +1,88 @@
+package nl.specialisterren.fitnesse.fixture.slim.web;
+
+import nl.hsac.fitnesse.fixture.slim.web.SeleniumDriverSetup;
+import org.openqa.selenium.WebDriverException;
+
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Selenium driver setup that keeps the browser open between pages, instead of starting a new one for each page.
+ * This is opt-in: the default Gui SetUp and TearDown start and stop the browser for every page. A suite opts in by
+ * using start reused driver for in its SetUp and release driver in its TearDown (instead of start driver for and
+ * stop driver). A reused browser is reset (see ExtendedBrowserTest#resetBrowserSession) before the page starts,
+ * and is restarted after a configurable number of pages (see ReusedWebDriverSession).
+ */
+public class ReusedSessionDriverSetup extends SeleniumDriverSetup {
+    private static final AtomicBoolean SHUTDOWN_HOOK_ADDED = new AtomicBoolean();
+
+    /**
+     * Continues in the browser released by the previous page when it is the same browser, still responds and has
+     * not reached its maximum number of uses. Otherwise starts a new driver.
+     * @param browser browser to use, e.g. firefox or chrome.
+     * @return true if a browser is available.
+     */
+    public boolean startReusedDriverFor(String browser) throws Exception {
+        if (ReusedWebDriverSession.acquire(browser)) {
+            try {
+                new ExtendedBrowserTest().resetBrowserSession();
+                return true;
+            } catch (WebDriverException e) {
+                // the browser crashed or was closed, start a new one
+                stopReusedDriver();
+            }
+        } else if (ReusedWebDriverSession.hasSession()) {
+            stopReusedDriver();
+        }
+        boolean started = startDriverFor(browser);
+        ReusedWebDriverSession.started(browser);
+        if (SHUTDOWN_HOOK_ADDED.compareAndSet(false, true)) {
+            // the last page's browser is not stopped by its TearDown
+            Runtime.getRuntime().addShutdownHook(new Thread(ReusedSessionDriverSetup::stopAtShutdown,
+                    "reused-webdriver-session"));
+        }
+        return started;
+    }
+
+    /**
+     * Keeps the browser for the next page, or stops it when it has reached its maximum number of uses.
+     * @return true if the browser was kept.
+     */
+    public boolean releaseDriver() {
+        if (ReusedWebDriverSession.release()) {
+            return true;
+        }
+        stopReusedDriver();
+        return false;
+    }
+
+    /**
+     * @param max number of pages a browser is used for before it is restarted.
+     */
+    public void setMaxSessionUsesTo(int max) {
+        ReusedWebDriverSession.setMaxUses(max);
+    }
+
+    public Map<String, Object> reusedSessionStatistics() {
+        return ReusedWebDriverSession.statistics();
+    }
+
+    private void stopReusedDriver() {
+        ReusedWebDriverSession.stopped();
+        try {
+            stopDriver();
+        } catch (WebDriverException e) {
+            // browser is already gone
+        }
+    }
+
+    private static void stopAtShutdown() {
+        if (ReusedWebDriverSession.hasSession()) {
+            try {
+                new ReusedSessionDriverSetup().stopReusedDriver();
+            } catch (RuntimeException e) {
+                // JVM is stopping anyway
+            }
+        }
+    }
+}
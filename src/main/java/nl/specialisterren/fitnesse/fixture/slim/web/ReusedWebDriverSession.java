@@ -0,0 +1,89 @@
+package nl.specialisterren.fitnesse.fixture.slim.web;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Bookkeeping of the browser session kept open between pages by ReusedSessionDriverSetup.
+ * The SLIM JVM runs one page at a time and hsac's fixtures share one driver, so this is a single session (not a
+ * pool of them): the one the previous page released. Parallel runs get a session per shard, as each shard is its
+ * own JVM.
+ * A session is recycled (the browser restarted) after the number of pages in system property
+ * <code>seleniumSession.maxUses</code> (default 25), or when another browser is requested.
+ */
+final class ReusedWebDriverSession {
+    private static String browser;
+    private static int uses;
+    private static boolean idle;
+    private static int maxUses = Integer.getInteger("seleniumSession.maxUses", 25);
+    private static int started;
+    private static int reused;
+    private static int recycled;
+
+    private ReusedWebDriverSession() {
+    }
+
+    /**
+     * @return whether the idle session can be handed out for browser (it is marked in use when so).
+     */
+    static synchronized boolean acquire(String requestedBrowser) {
+        if (idle && requestedBrowser.equals(browser) && uses < maxUses) {
+            idle = false;
+            uses++;
+            reused++;
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * @return whether a session is open (in use or idle) that must be stopped before starting another.
+     */
+    static synchronized boolean hasSession() {
+        return browser != null;
+    }
+
+    static synchronized void started(String startedBrowser) {
+        browser = startedBrowser;
+        uses = 1;
+        idle = false;
+        started++;
+    }
+
+    /**
+     * @return true if the session may be kept for the next page, false if it must be stopped.
+     */
+    static synchronized boolean release() {
+        if (browser == null) {
+            return false;
+        }
+        if (uses >= maxUses) {
+            recycled++;
+            stopped();
+            return false;
+        }
+        idle = true;
+        return true;
+    }
+
+    static synchronized void stopped() {
+        browser = null;
+        uses = 0;
+        idle = false;
+    }
+
+    static synchronized void setMaxUses(int max) {
+        maxUses = max;
+    }
+
+    static synchronized Map<String, Object> statistics() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("browser", browser);
+        stats.put("uses", uses);
+        stats.put("maxUses", maxUses);
+        stats.put("started", started);
+        stats.put("reused", reused);
+        stats.put("recycled", recycled);
+        return stats;
+    }
+}
@@ -0,0 +1,61 @@
+package nl.specialisterren.fitnesse.fixture.slim.web;
+
+import java.time.LocalDate;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Reads the sort dates from the HTML list produced by ExtendedBrowserTest#listAllSortDatesOf
+ * (<code>&lt;li&gt;dd-MM-yyyy HH:mm&lt;/li&gt;</code> items), without needing a browser.
+ */
+public final class SortDateList {
+    private static final DateTimeFormatter SORT_DATE_FORMAT = DateTimeFormatter.ofPattern("dd-MM-yyyy");
+    private static final Pattern LIST_ITEM_PATTERN = Pattern.compile("<li>.+?</li>");
+    private static final Pattern SORT_DATE_ITEM_PATTERN = Pattern.compile("<li>(\\d{2}-\\d{2}-\\d{4}) .+?(\\n.+?)*?</li>");
+
+    private SortDateList() {
+    }
+
+    /**
+     * @param list HTML list of sort dates.
+     * @return the date (dd-MM-yyyy) of each item that has a date followed by a time.
+     */
+    public static ArrayList<String> sortDatesOf(String list) {
+        ArrayList<String> values = new ArrayList<String>();
+        Matcher matcher = LIST_ITEM_PATTERN.matcher(list);
+        while (matcher.find()) {
+            String item = matcher.group();
+            Matcher m = SORT_DATE_ITEM_PATTERN.matcher(item);
+            if (m.find())
+                values.add(m.group(1));
+        }
+        return values;
+    }
+
+    /**
+     * @param list HTML list of sort dates.
+     * @param comparison <code>&gt;=</code> or <code>==</code> (anything else gives false).
+     * @param date date (dd-MM-yyyy) to compare with.
+     * @return for each date in the list, whether it compares to date as specified.
+     */
+    public static ArrayList<Boolean> datesAreDate(String list, String comparison, String date) {
+        ArrayList<Boolean> result = new ArrayList<Boolean>();
+        LocalDate dateToCompare2 = LocalDate.parse(date, SORT_DATE_FORMAT);
+        for (String sortDate : sortDatesOf(list)) {
+            LocalDate dateToCompare1 = LocalDate.parse(sortDate, SORT_DATE_FORMAT);
+            switch (comparison) {
+                case ">=":
+                    result.add(!dateToCompare1.isBefore(dateToCompare2));
+                    break;
+                case "==":
+                    result.add(dateToCompare1.equals(dateToCompare2));
+                    break;
+                default:
+                    result.add(false);
+            }
+        }
+        return result;
+    }
+}
@@ -0,0 +1,299 @@
+package nl.specialisterren.fitnesse.fixture.util;
+
+import javax.imageio.IIOImage;
+import javax.imageio.ImageIO;
+import javax.imageio.ImageWriteParam;
+import javax.imageio.ImageWriter;
+import javax.imageio.stream.ImageOutputStream;
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.RenderingHints;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Writes screenshots and page sources in the background, so a failing row does not wait for them.
+ * Captures with the same content (e.g. the same error page for several rows) are written once: the file of the
+ * first capture is returned for the others, as long as that file is still there. A capture whose name was already
+ * used gets a number added to its name, so it does not overwrite the earlier one. Once the run's disk budget is used
+ * up, captures are no longer written: a screenshot then refers to a placeholder image saying so.
+ * Configured using system properties:
+ * <ul>
+ *     <li><code>artifacts.async</code>: set to false to let the fixtures write captures themselves (default true)</li>
+ *     <li><code>artifacts.maxWidth</code>: screenshots wider than this are scaled down (default 0: not scaled)</li>
+ *     <li><code>artifacts.jpegQuality</code>: 1-100 to store screenshots as JPEG of this quality instead of PNG
+ *     (default 0: PNG)</li>
+ *     <li><code>artifacts.budgetMb</code>: maximum size of all captures written in one run (default 500)</li>
+ *     <li><code>artifacts.queueSize</code>: number of captures waiting to be written, when it is full the fixture
+ *     writes the capture itself (default 50)</li>
+ * </ul>
+ * Pending captures are written by {@link #flush()}, which reports the captures that could not be written (the
+ * GUI SuiteTearDown pages call it using extended browser test's flush artifacts), or else when the JVM stops.
+ */
+public class ArtifactWriter {
+    private static final ArtifactWriter INSTANCE = new ArtifactWriter();
+
+    private final boolean enabled = !"false".equals(System.getProperty("artifacts.async"));
+    private final int maxWidth = Integer.getInteger("artifacts.maxWidth", 0);
+    private final int jpegQuality = Integer.getInteger("artifacts.jpegQuality", 0);
+    private final long budget = Long.getLong("artifacts.budgetMb", 500) * 1024 * 1024;
+    private final ThreadPoolExecutor executor;
+    private final Map<String, String> filesByHash = new ConcurrentHashMap<>();
+    private final Set<String> usedPaths = ConcurrentHashMap.newKeySet();
+    private final Set<String> pendingPaths = ConcurrentHashMap.newKeySet();
+    private final Map<File, String> placeholders = new ConcurrentHashMap<>();
+    private final AtomicLong reserved = new AtomicLong();
+    private final AtomicLong bytesWritten = new AtomicLong();
+    private final AtomicInteger captured = new AtomicInteger();
+    private final AtomicInteger deduplicated = new AtomicInteger();
+    private final AtomicInteger skipped = new AtomicInteger();
+    private final AtomicInteger failed = new AtomicInteger();
+    // captures that could not be written since the last flush
+    private final ConcurrentLinkedQueue<String> problems = new ConcurrentLinkedQueue<>();
+
+    private ArtifactWriter() {
+        executor = new ThreadPoolExecutor(1, 1, 0, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(Integer.getInteger("artifacts.queueSize", 50)),
+                r -> {
+                    Thread thread = new Thread(r, "artifact-writer");
+                    thread.setDaemon(true);
+                    return thread;
+                },
+                new ThreadPoolExecutor.CallerRunsPolicy());
+        // too late for the test report, so what could not be written is only printed
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> flush().forEach(System.err::println),
+                "artifact-writer-flush"));
+    }
+
+    public static ArtifactWriter getInstance() {
+        return INSTANCE;
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Schedules a screenshot to be written (scaled and compressed as configured).
+     * @param directory directory to write to.
+     * @param baseName name of the file, without extension.
+     * @param png screenshot as taken by WebDriver.
+     * @return path of the file the screenshot will be in, or of a placeholder image when the disk budget is used up.
+     */
+    public String writeImage(File directory, String baseName, byte[] png) {
+        String extension = jpegQuality > 0 ? ".jpg" : ".png";
+        String path = write(directory, baseName + extension, png, () -> encode(png));
+        return path == null ? placeholder(directory) : path;
+    }
+
+    /**
+     * Schedules a text (e.g. page source) to be written as UTF-8.
+     * @param directory directory to write to.
+     * @param fileName name of the file, including extension.
+     * @return path of the file the text will be in, null when the disk budget is used up.
+     */
+    public String writeText(File directory, String fileName, String text) {
+        byte[] content = text.getBytes(StandardCharsets.UTF_8);
+        return write(directory, fileName, content, () -> content);
+    }
+
+    private interface Content {
+        byte[] get() throws IOException;
+    }
+
+    private String write(File directory, String fileName, byte[] original, Content content) {
+        captured.incrementAndGet();
+        String hash = sha256(original);
+        String existing = filesByHash.get(hash);
+        if (existing != null) {
+            if (pendingPaths.contains(existing) || new File(existing).isFile()) {
+                deduplicated.incrementAndGet();
+                return existing;
+            }
+            // removed (or its write failed) since, so it is written again
+            filesByHash.remove(hash, existing);
+        }
+        // the original size is an upper bound for what is written (captures are only made smaller)
+        if (reserved.addAndGet(original.length) > budget) {
+            reserved.addAndGet(-original.length);
+            skipped.incrementAndGet();
+            return null;
+        }
+        File file = uniqueFile(directory, fileName);
+        String path = file.getPath();
+        pendingPaths.add(path);
+        filesByHash.put(hash, path);
+        executor.execute(() -> {
+            try {
+                byte[] bytes = content.get();
+                directory.mkdirs();
+                Files.write(file.toPath(), bytes);
+                bytesWritten.addAndGet(bytes.length);
+                reserved.addAndGet(bytes.length - original.length);
+            } catch (IOException | RuntimeException e) {
+                failed.incrementAndGet();
+                problems.add("Unable to write " + file + ": " + e);
+            } finally {
+                pendingPaths.remove(path);
+            }
+        });
+        return path;
+    }
+
+    // adds -2, -3 and so on to the name (before its extension) until it is not used by an earlier capture
+    private File uniqueFile(File directory, String fileName) {
+        int dot = fileName.lastIndexOf('.');
+        String name = dot < 0 ? fileName : fileName.substring(0, dot);
+        String extension = dot < 0 ? "" : fileName.substring(dot);
+        File file = new File(directory, fileName);
+        for (int i = 2; !usedPaths.add(file.getPath()) || file.exists(); i++) {
+            file = new File(directory, name + "-" + i + extension);
+        }
+        return file;
+    }
+
+    // written once per directory (outside the budget), so fixtures always get an image to link to
+    private String placeholder(File directory) {
+        return placeholders.computeIfAbsent(directory, dir -> {
+            File file = new File(dir, "artifact-budget-exceeded.png");
+            try {
+                BufferedImage image = new BufferedImage(480, 40, BufferedImage.TYPE_INT_RGB);
+                Graphics2D g = image.createGraphics();
+                g.setColor(Color.WHITE);
+                g.fillRect(0, 0, image.getWidth(), image.getHeight());
+                g.setColor(Color.BLACK);
+                try {
+                    g.drawString("Screenshot not saved: artifact budget (artifacts.budgetMb) exceeded", 10, 25);
+                } catch (RuntimeException | Error e) {
+                    // no fonts available, an empty image still shows the screenshot is missing
+                }
+                g.dispose();
+                dir.mkdirs();
+                ImageIO.write(image, "png", file);
+            } catch (IOException e) {
+                problems.add("Unable to write " + file + ": " + e);
+            }
+            return file.getPath();
+        });
+    }
+
+    private byte[] encode(byte[] png) throws IOException {
+        if (maxWidth <= 0 && jpegQuality <= 0) {
+            return png;
+        }
+        BufferedImage image = ImageIO.read(new ByteArrayInputStream(png));
+        if (image == null) {
+            return png;
+        }
+        if (maxWidth > 0 && image.getWidth() > maxWidth) {
+            int height = Math.max(1, image.getHeight() * maxWidth / image.getWidth());
+            BufferedImage scaled = new BufferedImage(maxWidth, height, BufferedImage.TYPE_INT_RGB);
+            Graphics2D g = scaled.createGraphics();
+            g.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BILINEAR);
+            g.drawImage(image, 0, 0, maxWidth, height, null);
+            g.dispose();
+            image = scaled;
+        }
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        if (jpegQuality > 0) {
+            writeJpeg(toRgb(image), out);
+        } else {
+            ImageIO.write(image, "png", out);
+        }
+        return out.toByteArray();
+    }
+
+    // JPEG has no alpha channel
+    private static BufferedImage toRgb(BufferedImage image) {
+        if (image.getType() == BufferedImage.TYPE_INT_RGB) {
+            return image;
+        }
+        BufferedImage rgb = new BufferedImage(image.getWidth(), image.getHeight(), BufferedImage.TYPE_INT_RGB);
+        Graphics2D g = rgb.createGraphics();
+        g.drawImage(image, 0, 0, null);
+        g.dispose();
+        return rgb;
+    }
+
+    private void writeJpeg(BufferedImage image, ByteArrayOutputStream out) throws IOException {
+        ImageWriter writer = ImageIO.getImageWritersByFormatName("jpeg").next();
+        ImageWriteParam param = writer.getDefaultWriteParam();
+        param.setCompressionMode(ImageWriteParam.MODE_EXPLICIT);
+        param.setCompressionQuality(Math.min(100, jpegQuality) / 100f);
+        try (ImageOutputStream ios = ImageIO.createImageOutputStream(out)) {
+            writer.setOutput(ios);
+            writer.write(null, new IIOImage(image, null, null), param);
+        } finally {
+            writer.dispose();
+        }
+    }
+
+    private static String sha256(byte[] content) {
+        try {
+            byte[] hash = MessageDigest.getInstance("SHA-256").digest(content);
+            StringBuilder sb = new StringBuilder();
+            for (byte b : hash) {
+                sb.append(String.format("%02x", b));
+            }
+            return sb.toString();
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 not available", e);
+        }
+    }
+
+    /**
+     * Waits until all captures scheduled so far are written.
+     * @return the captures that could not be written since the previous flush, empty when all were written.
+     */
+    public List<String> flush() {
+        long deadline = System.nanoTime() + TimeUnit.MINUTES.toNanos(1);
+        try {
+            while (!executor.getQueue().isEmpty() || executor.getActiveCount() > 0) {
+                if (System.nanoTime() > deadline) {
+                    problems.add("Unable to write all artifacts within a minute, pending: "
+                            + executor.getQueue().size());
+                    break;
+                }
+                TimeUnit.MILLISECONDS.sleep(20);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        List<String> result = new ArrayList<>();
+        for (String problem; (problem = problems.poll()) != null; ) {
+            result.add(problem);
+        }
+        return result;
+    }
+
+    public Map<String, Object> statistics() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("captured", captured.get());
+        stats.put("deduplicated", deduplicated.get());
+        stats.put("skippedOverBudget", skipped.get());
+        stats.put("failed", failed.get());
+        stats.put("pending", executor.getQueue().size());
+        stats.put("bytesWritten", bytesWritten.get());
+        stats.put("budget", budget);
+        return stats;
+    }
+}
@@ -0,0 +1,31 @@
+package nl.specialisterren.fitnesse.fixture.util;
+
+import java.time.format.DateTimeFormatter;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Cache of (immutable, thread-safe) DateTimeFormatters by pattern, shared by all fixtures in the JVM.
+ */
+public final class DateTimeFormatterCache {
+    private static final LruCache<String, DateTimeFormatter> CACHE = new LruCache<>(128);
+
+    private DateTimeFormatterCache() {
+    }
+
+    /**
+     * @param pattern pattern as for {@link DateTimeFormatter#ofPattern(String)}.
+     * @return formatter using the default locale.
+     */
+    public static DateTimeFormatter get(String pattern) {
+        return CACHE.get(pattern, DateTimeFormatter::ofPattern);
+    }
+
+    public static DateTimeFormatter get(String pattern, Locale locale) {
+        return CACHE.get(locale.toLanguageTag() + "|" + pattern, k -> DateTimeFormatter.ofPattern(pattern, locale));
+    }
+
+    public static Map<String, Object> statistics() {
+        return CACHE.statistics();
+    }
+}
@@ -0,0 +1,281 @@
+package nl.specialisterren.fitnesse.fixture.util;
+
+import nl.hsac.fitnesse.fixture.util.HttpResponse;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.regex.Pattern;
+
+/**
+ * Timing and size of every request made by the NPO HTTP fixtures: DNS lookup, connect (including TLS handshake),
+ * time to first byte, signing and total time, request and response size and status, tagged with the page
+ * (see {@link #setTag(String)}) and the number of the request within that tag (requestOfTag).
+ * <p>
+ * The DNS, connect and first byte times are measured by the shared connection pool, for requests made on the
+ * fixture's thread (they are 0 when a pooled connection was reused). Each request is written to
+ * http-metrics-requests.csv, and when the JVM stops a summary per endpoint (method and path) with percentiles is
+ * written to http-metrics.csv and http-metrics.json (which also holds the statistics of the shared connection pool).
+ * Files are written to the directory in system property <code>httpMetrics.dir</code>, by default the FitNesse
+ * results directory, so the allure profile includes them in its report. Set <code>httpMetrics.enabled</code> to false to turn this off.
+ * Requests of threads that are excluded (see {@link #excludeCurrentThread()}) are not measured.
+ * </p>
+ */
+public final class HttpMetrics {
+    private static final boolean ENABLED = Boolean.parseBoolean(System.getProperty("httpMetrics.enabled", "true"));
+    private static final ThreadLocal<Request> CURRENT = new ThreadLocal<>();
+    private static final ThreadLocal<Boolean> EXCLUDED = ThreadLocal.withInitial(() -> Boolean.FALSE);
+    private static final LatencyStatistics TOTAL = new LatencyStatistics();
+    private static final LatencyStatistics FIRST_BYTE = new LatencyStatistics();
+    private static final Map<String, AtomicInteger> REQUESTS_PER_TAG = new ConcurrentHashMap<>();
+    // path segments that identify a resource: numbers, NPO mids and crids (e.g. VPWON_1322574), UUIDs and hashes
+    private static final Pattern ID_SEGMENT = Pattern.compile(
+            "\\d+|.*\\d{4,}.*|[0-9a-fA-F-]{16,}|.*[%:].*");
+    private static final AtomicBoolean STARTED = new AtomicBoolean();
+    private static volatile String tag = "";
+    private static Writer requestsWriter;
+
+    private HttpMetrics() {
+    }
+
+    /**
+     * Measurements of one request.
+     */
+    public static final class Request {
+        private final String endpoint;
+        private final String tag;
+        private final int requestOfTag;
+        private final long start = System.nanoTime();
+        private final long requestBytes;
+        private long dnsNanos;
+        private long connectNanos;
+        private long firstByteNanos;
+        private long signNanos;
+
+        private Request(String endpoint, String tag, long requestBytes) {
+            this.endpoint = endpoint;
+            this.tag = tag;
+            this.requestOfTag = REQUESTS_PER_TAG.computeIfAbsent(tag, t -> new AtomicInteger()).incrementAndGet();
+            this.requestBytes = requestBytes;
+        }
+    }
+
+    /**
+     * @param tag label for subsequent requests, e.g. the name of the page making them.
+     */
+    public static void setTag(String tag) {
+        HttpMetrics.tag = tag == null ? "" : tag;
+    }
+
+    /**
+     * Stops measuring requests made by the current thread, e.g. by load test users that keep their own statistics,
+     * so their traffic neither contends for the requests file nor ends up in the summary of the functional tests.
+     */
+    public static void excludeCurrentThread() {
+        EXCLUDED.set(Boolean.TRUE);
+    }
+
+    /**
+     * @return endpoint of request: method and path (without host and query), with segments identifying a resource
+     * replaced by {id}, e.g. GET /v1/api/media/{id}, so requests for different resources are reported together.
+     */
+    public static String endpoint(String method, String url) {
+        String path = url.split("\\?")[0].replaceFirst("^\\w+://[^/]+", "");
+        StringBuilder endpoint = new StringBuilder(method).append(' ');
+        String[] segments = path.split("/", -1);
+        for (int i = 0; i < segments.length; i++) {
+            if (i > 0) {
+                endpoint.append('/');
+            }
+            endpoint.append(ID_SEGMENT.matcher(segments[i]).matches() ? "{id}" : segments[i]);
+        }
+        return endpoint.toString();
+    }
+
+    /**
+     * Starts measuring a request made by the current thread.
+     * @param requestBytes size of request body.
+     * @return measurements, to pass to {@link #end(Request, HttpResponse)}, or null when disabled.
+     */
+    public static Request start(String method, String url, long requestBytes) {
+        if (!ENABLED || EXCLUDED.get()) {
+            return null;
+        }
+        if (STARTED.compareAndSet(false, true)) {
+            TOTAL.start();
+            FIRST_BYTE.start();
+            Runtime.getRuntime().addShutdownHook(new Thread(HttpMetrics::writeSummary, "http-metrics"));
+        }
+        Request request = new Request(endpoint(method, url), tag, requestBytes);
+        CURRENT.set(request);
+        return request;
+    }
+
+    public static void end(Request request, HttpResponse response) {
+        if (response == null) {
+            end(request, 0, 0);
+        } else {
+            end(request, response.getStatusCode(), utf8Length(response.getResponse()));
+        }
+    }
+
+    /**
+     * Completes measurement of a request whose body was not kept in a response.
+     */
+    public static void end(Request request, int status, long responseBytes) {
+        if (request == null) {
+            return;
+        }
+        CURRENT.remove();
+        long total = System.nanoTime() - request.start;
+        boolean success = status >= 100 && status < 400;
+        TOTAL.record(request.endpoint, total, success);
+        if (request.firstByteNanos > 0) {
+            FIRST_BYTE.record(request.endpoint, request.firstByteNanos, success);
+        }
+        writeRequest(request.tag + "," + request.requestOfTag + ",\"" + request.endpoint + "\"," + status + ","
+                + millis(request.dnsNanos) + "," + millis(request.connectNanos) + ","
+                + millis(request.firstByteNanos) + "," + millis(request.signNanos) + "," + millis(total) + ","
+                + request.requestBytes + "," + responseBytes);
+    }
+
+    /**
+     * Adds time spent signing to the current thread's request.
+     */
+    public static void signed(long nanos) {
+        Request request = CURRENT.get();
+        if (request != null) {
+            request.signNanos += nanos;
+        }
+    }
+
+    static void dnsLookup(long nanos) {
+        Request request = CURRENT.get();
+        if (request != null) {
+            request.dnsNanos += nanos;
+        }
+    }
+
+    static void connect(long nanos) {
+        Request request = CURRENT.get();
+        if (request != null) {
+            request.connectNanos += nanos;
+        }
+    }
+
+    static void firstByte(long nanos) {
+        Request request = CURRENT.get();
+        if (request != null) {
+            request.firstByteNanos += nanos;
+        }
+    }
+
+    /**
+     * @return summary of all requests: count, error rate, throughput and percentiles of total time.
+     */
+    public static Map<String, Object> summary() {
+        return TOTAL.summary(null);
+    }
+
+    private static synchronized void writeRequest(String line) {
+        try {
+            if (requestsWriter == null) {
+                File file = file("http-metrics-requests.csv");
+                file.getParentFile().mkdirs();
+                requestsWriter = new BufferedWriter(Files.newBufferedWriter(file.toPath(), StandardCharsets.UTF_8));
+                requestsWriter.write("tag,requestOfTag,endpoint,status,dnsMs,connectMs,firstByteMs,signMs,totalMs,"
+                        + "requestBytes,responseBytes\n");
+            }
+            requestsWriter.write(line);
+            requestsWriter.write('\n');
+        } catch (IOException e) {
+            // metrics must never fail a test
+            System.err.println("Unable to write HTTP metrics: " + e);
+        }
+    }
+
+    /**
+     * Writes the summary per endpoint, as CSV and JSON.
+     */
+    public static synchronized void writeSummary() {
+        try {
+            if (requestsWriter != null) {
+                requestsWriter.flush();
+            }
+            TOTAL.writeCsv(file("http-metrics.csv"));
+            StringBuilder json = new StringBuilder("{\n");
+            for (String endpoint : TOTAL.endpoints()) {
+                json.append("  \"").append(endpoint.replace("\"", "\\\"")).append("\": {\"total\": ")
+                        .append(toJson(TOTAL.summary(endpoint)))
+                        .append(", \"firstByte\": ").append(toJson(FIRST_BYTE.summary(endpoint)))
+                        .append("},\n");
+            }
+            json.append("  \"all\": {\"total\": ").append(toJson(TOTAL.summary(null))).append("},\n");
+            json.append("  \"connectionPool\": ").append(toJson(SharedHttpConnectionPool.statistics())).append("\n}\n");
+            Files.write(file("http-metrics.json").toPath(), json.toString().getBytes(StandardCharsets.UTF_8));
+        } catch (IOException e) {
+            System.err.println("Unable to write HTTP metrics: " + e);
+        }
+    }
+
+    private static String toJson(Map<?, ?> values) {
+        StringBuilder sb = new StringBuilder("{");
+        for (Map.Entry<?, ?> entry : values.entrySet()) {
+            if (sb.length() > 1) {
+                sb.append(", ");
+            }
+            sb.append('"').append(entry.getKey()).append("\": ");
+            Object value = entry.getValue();
+            if (value instanceof Map) {
+                sb.append(toJson((Map<?, ?>) value));
+            } else if (value instanceof CharSequence) {
+                sb.append('"').append(value.toString().replace("\"", "\\\"")).append('"');
+            } else {
+                sb.append(value);
+            }
+        }
+        return sb.append('}').toString();
+    }
+
+    private static File file(String name) {
+        String dir = System.getProperty("httpMetrics.dir",
+                System.getProperty("fitnesseResultsDir", "target/fitnesse-results"));
+        return new File(dir, name);
+    }
+
+    private static double millis(long nanos) {
+        return TimeUnit.NANOSECONDS.toMicros(nanos) / 1000.0;
+    }
+
+    /**
+     * @return number of bytes of value encoded as UTF-8, without encoding it.
+     */
+    public static long utf8Length(String value) {
+        if (value == null) {
+            return 0;
+        }
+        long length = 0;
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c < 0x80) {
+                length++;
+            } else if (c < 0x800) {
+                length += 2;
+            } else if (Character.isHighSurrogate(c)) {
+                length += 4;
+                i++;
+            } else {
+                length += 3;
+            }
+        }
+        return length;
+    }
+}
@@ -0,0 +1,172 @@
+package nl.specialisterren.fitnesse.fixture.util;
+
+import nl.hsac.fitnesse.fixture.slim.SlimFixtureException;
+import nl.hsac.fitnesse.fixture.util.HttpResponse;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.URI;
+import java.net.URISyntaxException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Records HTTP responses to disk, and replays them instead of sending requests, so API pages can run without
+ * network (and fixture overhead can be measured without server latency).
+ * <p>
+ * A recording is a directory (in system property <code>httpRecording.dir</code>, default src/test/recordings)
+ * containing one file per request. Requests are identified by method, path, sorted query parameters (without the
+ * parameters listed in <code>httpRecording.ignoredParameters</code>, default apiKey,iecomp) and the hash of their
+ * body. Host and authentication headers are not part of the key, so a recording made on one environment can be
+ * replayed for another. Each file holds the request line, status, response headers and response body as text.
+ * </p>
+ * The mode can be set for all fixtures using system properties <code>httpRecording.mode</code> (record or replay)
+ * and <code>httpRecording.name</code>.
+ */
+public class HttpRecorder {
+    public enum Mode { OFF, RECORD, REPLAY }
+
+    private static final List<String> IGNORED_PARAMETERS = Arrays.asList(
+            System.getProperty("httpRecording.ignoredParameters", "apiKey,iecomp").split(","));
+
+    private Mode mode = Mode.OFF;
+    private File directory;
+    private int recorded;
+    private int replayed;
+
+    public HttpRecorder() {
+        String defaultMode = System.getProperty("httpRecording.mode");
+        String defaultName = System.getProperty("httpRecording.name", "default");
+        if (defaultMode != null && !defaultMode.isEmpty() && !defaultMode.startsWith("${")) {
+            setMode(Mode.valueOf(defaultMode.toUpperCase()), defaultName);
+        }
+    }
+
+    public void setMode(Mode mode, String name) {
+        this.mode = mode;
+        directory = new File(System.getProperty("httpRecording.dir", "src/test/recordings"), name);
+    }
+
+    public boolean isReplaying() {
+        return mode == Mode.REPLAY;
+    }
+
+    public boolean isRecording() {
+        return mode == Mode.RECORD;
+    }
+
+    /**
+     * Stores response, when recording.
+     */
+    public void record(String method, String url, String body, HttpResponse response) {
+        if (mode != Mode.RECORD) {
+            return;
+        }
+        String key = key(method, url, body);
+        StringBuilder sb = new StringBuilder();
+        sb.append(key).append('\n');
+        sb.append(response.getStatusCode()).append('\n');
+        for (Map.Entry<String, Object> header : response.getResponseHeaders().entrySet()) {
+            sb.append(header.getKey()).append(": ").append(header.getValue()).append('\n');
+        }
+        sb.append('\n');
+        if (response.getResponse() != null) {
+            sb.append(response.getResponse());
+        }
+        try {
+            directory.mkdirs();
+            Files.write(file(key).toPath(), sb.toString().getBytes(StandardCharsets.UTF_8));
+            recorded++;
+        } catch (IOException e) {
+            throw new SlimFixtureException(false, "Unable to record response in: " + directory, e);
+        }
+    }
+
+    /**
+     * Fills response from the recording.
+     * @throws SlimFixtureException when no response was recorded for the request.
+     */
+    public void replay(String method, String url, String body, HttpResponse response) {
+        String key = key(method, url, body);
+        File file = file(key);
+        if (!file.isFile()) {
+            throw new SlimFixtureException(false, "No recorded response for: " + key + " in " + directory);
+        }
+        String content;
+        try {
+            content = new String(Files.readAllBytes(file.toPath()), StandardCharsets.UTF_8);
+        } catch (IOException e) {
+            throw new SlimFixtureException(false, "Unable to read recorded response: " + file, e);
+        }
+        int headersEnd = content.indexOf("\n\n");
+        String[] lines = content.substring(0, headersEnd).split("\n");
+        response.setStatusCode(Integer.parseInt(lines[1]));
+        Map<String, Object> headers = response.getResponseHeaders();
+        headers.clear();
+        for (int i = 2; i < lines.length; i++) {
+            int colon = lines[i].indexOf(": ");
+            headers.put(lines[i].substring(0, colon), lines[i].substring(colon + 2));
+        }
+        response.setResponse(content.substring(headersEnd + 2));
+        replayed++;
+    }
+
+    static String key(String method, String url, String body) {
+        URI uri;
+        try {
+            uri = new URI(url);
+        } catch (URISyntaxException e) {
+            throw new SlimFixtureException(false, "Unable to parse URL: " + url, e);
+        }
+        StringBuilder key = new StringBuilder(method).append(' ').append(uri.getRawPath());
+        String query = uri.getRawQuery();
+        if (query != null && !query.isEmpty()) {
+            List<String> parameters = new ArrayList<>();
+            for (String parameter : query.split("&")) {
+                if (!IGNORED_PARAMETERS.contains(parameter.split("=", 2)[0])) {
+                    parameters.add(parameter);
+                }
+            }
+            Collections.sort(parameters);
+            key.append('?').append(String.join("&", parameters));
+        }
+        if (body != null && !body.isEmpty()) {
+            key.append(" body:").append(sha256(body).substring(0, 16));
+        }
+        return key.toString();
+    }
+
+    private File file(String key) {
+        return new File(directory, sha256(key).substring(0, 32) + ".http");
+    }
+
+    private static String sha256(String value) {
+        try {
+            byte[] hash = MessageDigest.getInstance("SHA-256").digest(value.getBytes(StandardCharsets.UTF_8));
+            StringBuilder sb = new StringBuilder();
+            for (byte b : hash) {
+                sb.append(String.format("%02x", b));
+            }
+            return sb.toString();
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 not available", e);
+        }
+    }
+
+    public Map<String, Object> statistics() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("mode", mode);
+        stats.put("recording", directory == null ? null : directory.getPath());
+        stats.put("recorded", recorded);
+        stats.put("replayed", replayed);
+        return stats;
+    }
+}
@@ -0,0 +1,83 @@
+package nl.specialisterren.fitnesse.fixture.util;
+
+import com.jayway.jsonpath.Configuration;
+import com.jayway.jsonpath.InvalidJsonException;
+import com.jayway.jsonpath.JsonPath;
+import com.jayway.jsonpath.Option;
+import nl.hsac.fitnesse.fixture.slim.SlimFixtureException;
+
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Evaluates JsonPath expressions against already parsed JSON documents, using compiled expressions that are cached
+ * by path. The cache size can be set using system property <code>jsonPathCacheSize</code> (default 256).
+ */
+public final class JsonPaths {
+    private static final Configuration CONFIGURATION = Configuration.defaultConfiguration();
+    // the options of hsac's JsonPathHelper.getAllJsonPath: missing paths give an empty list instead of an exception
+    private static final Configuration ALL_CONFIGURATION = CONFIGURATION.addOptions(
+            Option.ALWAYS_RETURN_LIST, Option.SUPPRESS_EXCEPTIONS);
+    // like ALL_CONFIGURATION, but a missing leaf gives null
+    private static final Configuration LIST_CONFIGURATION = ALL_CONFIGURATION.addOptions(
+            Option.DEFAULT_PATH_LEAF_TO_NULL);
+    private static final LruCache<String, JsonPath> COMPILED =
+            new LruCache<>(Integer.getInteger("jsonPathCacheSize", 256));
+
+    private JsonPaths() {
+    }
+
+    /**
+     * Parses JSON once, so multiple expressions can be evaluated against it.
+     * @param json JSON text.
+     * @return parsed document.
+     */
+    public static Object parse(String json) {
+        try {
+            return CONFIGURATION.jsonProvider().parse(json);
+        } catch (InvalidJsonException e) {
+            throw new SlimFixtureException(false, "Response is not valid JSON", e);
+        }
+    }
+
+    /**
+     * @param path JsonPath expression, '$.' is added when it does not start with '$' (like JsonHttpTest does).
+     * @return compiled expression.
+     */
+    public static JsonPath compile(String path) {
+        return COMPILED.get(normalise(path), JsonPath::compile);
+    }
+
+    /**
+     * Evaluates an expression in a single pass over the document, also when it matches multiple values
+     * (wildcards, slices or filters).
+     * @param document parsed document (see {@link #parse(String)}).
+     * @param path JsonPath expression.
+     * @return all values matched, empty when there are none.
+     */
+    public static List<Object> values(Object document, String path) {
+        return compile(path).read(document, LIST_CONFIGURATION);
+    }
+
+    /**
+     * Like {@link #values(Object, String)}, but with the options hsac uses for elementOfJsonPath, so a missing leaf
+     * is not matched (instead of giving null).
+     * @param document parsed document (see {@link #parse(String)}).
+     * @param path JsonPath expression.
+     * @return all values matched, empty when there are none.
+     */
+    public static List<Object> allValues(Object document, String path) {
+        return compile(path).read(document, ALL_CONFIGURATION);
+    }
+
+    static String normalise(String path) {
+        if (path.startsWith("$")) {
+            return path;
+        }
+        return path.startsWith("[") ? "$" + path : "$." + path;
+    }
+
+    public static Map<String, Object> statistics() {
+        return COMPILED.statistics();
+    }
+}
@@ -0,0 +1,154 @@
+package nl.specialisterren.fitnesse.fixture.util;
+
+import org.HdrHistogram.ConcurrentHistogram;
+import org.HdrHistogram.Histogram;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.nio.charset.StandardCharsets;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Latency histograms (HdrHistogram, microsecond resolution) and error counts per endpoint, safe for concurrent use.
+ * Skipped iterations (not sent at all, so without a latency) are counted as errors of the total only.
+ */
+public class LatencyStatistics {
+    private static final long MAX_LATENCY_MICROS = TimeUnit.MINUTES.toMicros(10);
+
+    private final Map<String, Endpoint> endpoints = new ConcurrentHashMap<>();
+    private final LongAdder skipped = new LongAdder();
+    private volatile long startNanos = System.nanoTime();
+    private volatile long endNanos;
+
+    private static final class Endpoint {
+        private final Histogram histogram = new ConcurrentHistogram(MAX_LATENCY_MICROS, 3);
+        private final LongAdder errors = new LongAdder();
+    }
+
+    public void start() {
+        endpoints.clear();
+        skipped.reset();
+        endNanos = 0;
+        startNanos = System.nanoTime();
+    }
+
+    public void stop() {
+        endNanos = System.nanoTime();
+    }
+
+    /**
+     * @param endpoint label of endpoint (e.g. GET /media).
+     * @param nanos latency.
+     * @param success whether the request succeeded.
+     */
+    public void record(String endpoint, long nanos, boolean success) {
+        Endpoint e = endpoints.computeIfAbsent(endpoint, k -> new Endpoint());
+        e.histogram.recordValue(Math.min(MAX_LATENCY_MICROS, TimeUnit.NANOSECONDS.toMicros(nanos)));
+        if (!success) {
+            e.errors.increment();
+        }
+    }
+
+    /**
+     * Counts an iteration that was not sent, e.g. because all users were busy when it was due.
+     */
+    public void recordSkipped() {
+        skipped.increment();
+    }
+
+    /**
+     * @return labels of endpoints recorded.
+     */
+    public Set<String> endpoints() {
+        return endpoints.keySet();
+    }
+
+    private double seconds() {
+        long end = endNanos == 0 ? System.nanoTime() : endNanos;
+        return Math.max(1, end - startNanos) / 1e9;
+    }
+
+    /**
+     * @param endpoint endpoint label, or null for all endpoints together.
+     * @return count, errors, skipped, errorRate (%), throughput (per second) and latency percentiles (ms). Count,
+     * throughput and percentiles are of the requests sent, errors and error rate of the total include the skipped
+     * iterations.
+     */
+    public Map<String, Object> summary(String endpoint) {
+        Histogram histogram = histogram(endpoint);
+        long errors = 0;
+        for (Map.Entry<String, Endpoint> e : endpoints.entrySet()) {
+            if (endpoint == null || endpoint.equals(e.getKey())) {
+                errors += e.getValue().errors.sum();
+            }
+        }
+        long count = histogram.getTotalCount();
+        long skippedCount = endpoint == null ? skipped.sum() : 0;
+        errors += skippedCount;
+        Map<String, Object> summary = new LinkedHashMap<>();
+        summary.put("count", count);
+        summary.put("errors", errors);
+        summary.put("skipped", skippedCount);
+        summary.put("errorRate", count + skippedCount == 0 ? 0.0 : round(100.0 * errors / (count + skippedCount)));
+        summary.put("throughput", round(count / seconds()));
+        summary.put("p50", millis(histogram, 50));
+        summary.put("p90", millis(histogram, 90));
+        summary.put("p99", millis(histogram, 99));
+        summary.put("p99.9", millis(histogram, 99.9));
+        summary.put("max", round(histogram.getMaxValue() / 1000.0));
+        return summary;
+    }
+
+    /**
+     * @return percentile of latency in ms.
+     */
+    public double percentile(String endpoint, double percentile) {
+        return millis(histogram(endpoint), percentile);
+    }
+
+    private Histogram histogram(String endpoint) {
+        Histogram histogram = new Histogram(MAX_LATENCY_MICROS, 3);
+        for (Map.Entry<String, Endpoint> e : endpoints.entrySet()) {
+            if (endpoint == null || endpoint.equals(e.getKey())) {
+                histogram.add(e.getValue().histogram);
+            }
+        }
+        return histogram;
+    }
+
+    private static double millis(Histogram histogram, double percentile) {
+        return round(histogram.getValueAtPercentile(percentile) / 1000.0);
+    }
+
+    private static double round(double value) {
+        return Math.round(value * 100) / 100.0;
+    }
+
+    /**
+     * Writes summary per endpoint (and in total) as CSV.
+     */
+    public void writeCsv(File file) throws IOException {
+        file.getParentFile().mkdirs();
+        try (PrintWriter out = new PrintWriter(file, StandardCharsets.UTF_8.name())) {
+            out.println("endpoint,count,errors,skipped,errorRate,throughput,p50,p90,p99,p99.9,max");
+            for (String endpoint : endpoints.keySet()) {
+                out.println(csvLine(endpoint, summary(endpoint)));
+            }
+            out.println(csvLine("total", summary(null)));
+        }
+    }
+
+    private static String csvLine(String endpoint, Map<String, Object> summary) {
+        StringBuilder sb = new StringBuilder('"' + endpoint.replace("\"", "\"\"") + '"');
+        for (Object value : summary.values()) {
+            sb.append(',').append(value);
+        }
+        return sb.toString();
+    }
+}
@@ -0,0 +1,104 @@
+package nl.specialisterren.fitnesse.fixture.util;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+
+/**
+ * Small thread-safe least-recently-used cache, that keeps track of its hits, misses and evictions.
+ * Values are created outside the lock, so a slow loader does not block other threads' lookups.
+ * @param <K> type of key.
+ * @param <V> type of value.
+ */
+public class LruCache<K, V> {
+    private final int maxSize;
+    private final Map<K, V> entries;
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong evictions = new AtomicLong();
+
+    public LruCache(int maxSize) {
+        if (maxSize < 1) {
+            throw new IllegalArgumentException("maxSize must be at least 1, but was: " + maxSize);
+        }
+        this.maxSize = maxSize;
+        entries = new LinkedHashMap<K, V>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<K, V> eldest) {
+                boolean evict = size() > LruCache.this.maxSize;
+                if (evict) {
+                    evictions.incrementAndGet();
+                }
+                return evict;
+            }
+        };
+    }
+
+    /**
+     * @param key key to look up.
+     * @param loader function to create value when key is not present.
+     * @return cached value, or newly created one.
+     */
+    public V get(K key, Function<? super K, ? extends V> loader) {
+        V value;
+        synchronized (entries) {
+            value = entries.get(key);
+        }
+        if (value != null) {
+            hits.incrementAndGet();
+        } else {
+            misses.incrementAndGet();
+            V created = loader.apply(key);
+            synchronized (entries) {
+                value = entries.get(key);
+                if (value == null) {
+                    entries.put(key, created);
+                    value = created;
+                }
+            }
+        }
+        return value;
+    }
+
+    public void clear() {
+        synchronized (entries) {
+            entries.clear();
+        }
+    }
+
+    public int size() {
+        synchronized (entries) {
+            return entries.size();
+        }
+    }
+
+    public int getMaxSize() {
+        return maxSize;
+    }
+
+    public long getHits() {
+        return hits.get();
+    }
+
+    public long getMisses() {
+        return misses.get();
+    }
+
+    public long getEvictions() {
+        return evictions.get();
+    }
+
+    /**
+     * @return hits, misses, evictions, size and maxSize of this cache.
+     */
+    public Map<String, Object> statistics() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("hits", getHits());
+        stats.put("misses", getMisses());
+        stats.put("evictions", getEvictions());
+        stats.put("size", size());
+        stats.put("maxSize", getMaxSize());
+        return stats;
+    }
+}
@@ -0,0 +1,89 @@
+package nl.specialisterren.fitnesse.fixture.util;
+
+import nl.hsac.fitnesse.fixture.util.HttpResponse;
+
+import java.util.function.BiConsumer;
+import java.util.function.BooleanSupplier;
+import java.util.function.Supplier;
+import java.util.function.UnaryOperator;
+
+/**
+ * Signs, sends (or replays), records and measures the requests of the NPO API fixtures. NpoJsonHttpTest and
+ * NpoXmlHttpTest extend different hsac base classes, so they share this through composition: each fixture hands
+ * in the parts of its HttpTest the pipeline needs.
+ */
+public class NpoRequestPipeline {
+    private final NpoRequestSigner signer;
+    private final HttpRecorder recorder = new HttpRecorder();
+    private final UnaryOperator<String> urlWithParams;
+    private final BiConsumer<String, String> header;
+    private final Supplier<HttpResponse> response;
+
+    /**
+     * @param signer signer for the fixture's credentials.
+     * @param urlWithParams the fixture's createUrlWithParams.
+     * @param header sets a request header (name, value) for subsequent requests.
+     * @param response the fixture's (current) response.
+     */
+    public NpoRequestPipeline(NpoRequestSigner signer, UnaryOperator<String> urlWithParams,
+                              BiConsumer<String, String> header, Supplier<HttpResponse> response) {
+        this.signer = signer;
+        this.urlWithParams = urlWithParams;
+        this.header = header;
+        this.response = response;
+    }
+
+    /**
+     * Sends a request, or replays it when the recorder is replaying.
+     * @param method HTTP method.
+     * @param serviceUrl URL as passed to the fixture (without the fixture's parameters).
+     * @param body request body (or file name), null if none.
+     * @param requestBytes size of the request body (0 if unknown).
+     * @param request sends the request using the fixture's super implementation.
+     * @param replay replays the request (see {@link #replay(String, String, String)}), setting the fixture's
+     *               request state as sending would.
+     * @return result of request or replay.
+     */
+    public boolean send(String method, String serviceUrl, String body, long requestBytes,
+                        BooleanSupplier request, BooleanSupplier replay) {
+        if (recorder.isReplaying()) {
+            return replay.getAsBoolean();
+        }
+        String url = urlWithParams.apply(serviceUrl);
+        HttpMetrics.Request metrics = HttpMetrics.start(method, url, requestBytes);
+        try {
+            sign(url, header::accept);
+            boolean result = request.getAsBoolean();
+            recorder.record(method, url, body, response.get());
+            return result;
+        } finally {
+            HttpMetrics.end(metrics, response.get());
+        }
+    }
+
+    /**
+     * Fills the fixture's response from the recording.
+     */
+    public void replay(String method, String serviceUrl, String body) {
+        recorder.replay(method, urlWithParams.apply(serviceUrl), body, response.get());
+    }
+
+    /**
+     * Signs a request, measuring the time taken (see {@link HttpMetrics#signed(long)}).
+     * @param url complete URL of the request (including query parameters).
+     * @param sink receives the headers to add to the request.
+     */
+    public void sign(String url, NpoRequestSigner.HeaderSink sink) {
+        long start = System.nanoTime();
+        signer.sign(url, sink);
+        HttpMetrics.signed(System.nanoTime() - start);
+    }
+
+    public NpoRequestSigner getSigner() {
+        return signer;
+    }
+
+    public HttpRecorder getRecorder() {
+        return recorder;
+    }
+}
@@ -0,0 +1,146 @@
+package nl.specialisterren.fitnesse.fixture.util;
+
+import nl.hsac.fitnesse.fixture.slim.SlimFixtureException;
+
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+import java.net.URI;
+import java.net.URISyntaxException;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.time.ZoneOffset;
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Signs requests for the NPO Frontend API, producing the same headers as NpoApiAuthentication
+ * (Authorization, Origin and X-NPO-Date).
+ * The HMAC is initialised once per thread for the secret, the canonical form of each URL is cached, and headers are
+ * handed directly to the caller instead of via an intermediate map. Signers are shared between fixture instances
+ * using the same credentials (see {@link #forCredentials(String, String, String)}).
+ */
+public class NpoRequestSigner {
+    private static final String ALGORITHM = "HmacSHA256";
+    private static final DateTimeFormatter DATE_FORMAT =
+            DateTimeFormatter.ofPattern("EEE, dd MMM yyyy HH:mm:ss 'GMT'", Locale.US);
+    private static final Map<String, NpoRequestSigner> SIGNERS = new ConcurrentHashMap<>();
+
+    private final String apiKey;
+    private final String origin;
+    private final ThreadLocal<Mac> mac;
+    private final LruCache<String, String> canonicalUris = new LruCache<>(512);
+    private final LongAdder signCount = new LongAdder();
+    private final LongAdder totalSignNanos = new LongAdder();
+    private final AtomicLong maxSignNanos = new AtomicLong();
+
+    /**
+     * Receives the headers of a signed request.
+     */
+    public interface HeaderSink {
+        void header(String name, String value);
+    }
+
+    public NpoRequestSigner(String apiKey, String secret, String origin) {
+        this.apiKey = apiKey;
+        this.origin = origin;
+        SecretKeySpec key = new SecretKeySpec(secret.getBytes(StandardCharsets.UTF_8), ALGORITHM);
+        mac = ThreadLocal.withInitial(() -> {
+            try {
+                Mac m = Mac.getInstance(ALGORITHM);
+                m.init(key);
+                return m;
+            } catch (GeneralSecurityException e) {
+                throw new IllegalStateException("Unable to initialise " + ALGORITHM, e);
+            }
+        });
+    }
+
+    /**
+     * @return signer for the credentials, shared with all other fixtures using the same credentials.
+     */
+    public static NpoRequestSigner forCredentials(String apiKey, String secret, String origin) {
+        return SIGNERS.computeIfAbsent(apiKey + '\n' + origin + '\n' + secret,
+                k -> new NpoRequestSigner(apiKey, secret, origin));
+    }
+
+    /**
+     * Signs a request.
+     * @param url complete URL of the request (including query parameters).
+     * @param sink receives the headers to add to the request.
+     */
+    public void sign(String url, HeaderSink sink) {
+        sign(url, DATE_FORMAT.format(ZonedDateTime.now(ZoneOffset.UTC)), sink);
+    }
+
+    // date as sent in X-NPO-Date, separate so the signature can be compared with NpoApiAuthentication's
+    void sign(String url, String date, HeaderSink sink) {
+        long start = System.nanoTime();
+        String message = "origin:" + origin + ",x-npo-date:" + date + "," + canonicalUris.get(url, NpoRequestSigner::canonicalUri);
+        String signature = Base64.getEncoder().encodeToString(mac.get().doFinal(message.getBytes(StandardCharsets.UTF_8)));
+
+        sink.header("Authorization", "NPO " + apiKey + ":" + signature);
+        sink.header("Origin", origin);
+        sink.header("X-NPO-Date", date);
+        record(System.nanoTime() - start);
+    }
+
+    /**
+     * @return the headers for a request, for callers that need them as map.
+     */
+    public Map<String, String> sign(String url) {
+        Map<String, String> headers = new LinkedHashMap<>();
+        sign(url, headers::put);
+        return headers;
+    }
+
+    static String canonicalUri(String url) {
+        URI uri;
+        try {
+            uri = new URI(url);
+        } catch (URISyntaxException e) {
+            throw new SlimFixtureException("Unable to parse URL for API authentication!", e);
+        }
+        StringBuilder sb = new StringBuilder("uri:").append(uri.getPath());
+        String query = uri.getQuery();
+        if (query != null && !query.isEmpty()) {
+            String[] parameters = query.split("&");
+            Arrays.sort(parameters);
+            for (String parameter : parameters) {
+                String[] split = parameter.split("=", 2);
+                if (!"iecomp".equals(split[0])) {
+                    sb.append(',').append(split[0]).append(':').append(split.length > 1 ? split[1] : "");
+                }
+            }
+        }
+        return sb.toString();
+    }
+
+    private void record(long nanos) {
+        signCount.increment();
+        totalSignNanos.add(nanos);
+        long max;
+        do {
+            max = maxSignNanos.get();
+        } while (nanos > max && !maxSignNanos.compareAndSet(max, nanos));
+    }
+
+    /**
+     * @return number of requests signed, and mean and max signing time in microseconds.
+     */
+    public Map<String, Object> statistics() {
+        long count = signCount.sum();
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("signed", count);
+        stats.put("meanMicros", count == 0 ? 0 : totalSignNanos.sum() / count / 1000);
+        stats.put("maxMicros", maxSignNanos.get() / 1000);
+        return stats;
+    }
+}
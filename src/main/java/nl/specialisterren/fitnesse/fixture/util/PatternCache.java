@@ -0,0 +1,39 @@
+package nl.specialisterren.fitnesse.fixture.util;
+
+import java.util.Map;
+import java.util.regex.Pattern;
+
+/**
+ * Cache of compiled regular expressions, shared by all fixtures in the (SLIM) JVM.
+ * The maximum number of patterns kept can be set using system property <code>regexCacheSize</code>.
+ */
+public final class PatternCache {
+    private static final int DEFAULT_MAX_SIZE = 256;
+    private static final LruCache<String, Pattern> CACHE = new LruCache<>(
+            Integer.getInteger("regexCacheSize", DEFAULT_MAX_SIZE));
+
+    private PatternCache() {
+    }
+
+    public static Pattern get(String regex) {
+        return get(regex, 0);
+    }
+
+    /**
+     * @param regex regular expression.
+     * @param flags match flags, as for {@link Pattern#compile(String, int)}.
+     * @return compiled pattern.
+     */
+    public static Pattern get(String regex, int flags) {
+        // flags can't contain '/', so the key is unambiguous
+        return CACHE.get(flags + "/" + regex, k -> Pattern.compile(regex, flags));
+    }
+
+    public static Map<String, Object> statistics() {
+        return CACHE.statistics();
+    }
+
+    public static void clear() {
+        CACHE.clear();
+    }
+}
@@ -0,0 +1,208 @@
+package nl.specialisterren.fitnesse.fixture.util;
+
+import nl.hsac.fitnesse.fixture.slim.HttpTest;
+import nl.hsac.fitnesse.fixture.slim.SlimFixture.RepeatCompletion;
+import nl.hsac.fitnesse.fixture.util.HttpResponse;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.function.Predicate;
+
+/**
+ * Repeats an HTTP call until a condition is met, as an alternative to SlimFixture's fixed interval repeatUntil.
+ * <ul>
+ *     <li>Backoff: the wait between calls is the fixture's repeat interval (fixed), or starts at an initial interval
+ *     and doubles up to a maximum (exponential), or is picked at random up to that exponential interval (jittered,
+ *     which keeps parallel runs from polling in lock step).</li>
+ *     <li>Deadline: when set, calls are repeated until the deadline would be passed, instead of a maximum number of
+ *     times.</li>
+ *     <li>Conditional requests: the ETag and Last-Modified of the last response are sent as If-None-Match and
+ *     If-Modified-Since. On '304 Not Modified' the previous response is kept and the condition is not evaluated
+ *     again, so the body is neither downloaded nor parsed (the previous status, body and headers are restored).</li>
+ * </ul>
+ */
+public class Poller {
+    public enum Backoff { FIXED, EXPONENTIAL, JITTERED }
+
+    private Backoff backoff = Backoff.FIXED;
+    private long initialInterval;
+    private long maxInterval;
+    private long deadline;
+    private boolean conditional;
+
+    private int pollCount;
+    private int notModifiedCount;
+    private long timeSpentPolling;
+
+    public void useFixedInterval() {
+        backoff = Backoff.FIXED;
+    }
+
+    public void useBackoff(Backoff backoff, long initialMillis, long maxMillis) {
+        if (initialMillis <= 0 || maxMillis < initialMillis) {
+            throw new IllegalArgumentException("Backoff needs 0 < initial <= max, got: " + initialMillis + " and " + maxMillis);
+        }
+        this.backoff = backoff;
+        initialInterval = initialMillis;
+        maxInterval = maxMillis;
+    }
+
+    /**
+     * @param millis maximum time to spend polling, 0 to use the fixture's maximum number of repeats.
+     */
+    public void setDeadline(long millis) {
+        deadline = millis;
+    }
+
+    public void setConditional(boolean conditional) {
+        this.conditional = conditional;
+    }
+
+    /**
+     * @return whether polling differs from SlimFixture's repeatUntil.
+     */
+    public boolean isActive() {
+        return backoff != Backoff.FIXED || deadline > 0 || conditional;
+    }
+
+    /**
+     * @param attempt number of the repeat (starting at 1).
+     * @param fixedInterval fixture's repeat interval.
+     * @return milliseconds to wait before the repeat.
+     */
+    public long delay(int attempt, long fixedInterval) {
+        if (backoff == Backoff.FIXED) {
+            return fixedInterval;
+        }
+        long exponential = initialInterval << Math.min(attempt - 1, 30);
+        long interval = exponential <= 0 || exponential > maxInterval ? maxInterval : exponential;
+        if (backoff == Backoff.JITTERED) {
+            interval = initialInterval + ThreadLocalRandom.current().nextLong(interval - initialInterval + 1);
+        }
+        return interval;
+    }
+
+    /**
+     * Polls until completion is finished using the configured backoff, deadline and conditional requests,
+     * or using SlimFixture's repeatUntil when none of those is configured.
+     * @param completion condition to check on the fixture's current response, and how to repeat the call.
+     * @param repeatUntil the fixture's repeatUntil.
+     * @param fixture fixture whose response is checked, and whose headers are used for conditional requests.
+     * @return whether the condition was met.
+     */
+    public boolean poll(RepeatCompletion completion, Predicate<RepeatCompletion> repeatUntil, HttpTest fixture) {
+        if (!isActive()) {
+            return repeatUntil.test(completion);
+        }
+        long start = System.currentTimeMillis();
+        pollCount = 0;
+        notModifiedCount = 0;
+        try {
+            boolean finished = completion.isFinished();
+            while (!finished) {
+                long wait = delay(pollCount + 1, fixture.repeatInterval());
+                if (deadline > 0
+                        ? System.currentTimeMillis() + wait - start > deadline
+                        : pollCount >= fixture.repeatAtMostTimes()) {
+                    break;
+                }
+                Thread.sleep(wait);
+                pollCount++;
+                if (repeat(completion, fixture)) {
+                    finished = completion.isFinished();
+                } else {
+                    notModifiedCount++;
+                }
+            }
+            return finished;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        } finally {
+            timeSpentPolling = System.currentTimeMillis() - start;
+        }
+    }
+
+    // returns false when the server reported the response did not change
+    private boolean repeat(RepeatCompletion completion, HttpTest fixture) {
+        HttpResponse previous = fixture.getResponse();
+        if (!conditional || previous == null) {
+            completion.repeat();
+            return true;
+        }
+        String previousBody = previous.getResponse();
+        int previousStatus = previous.getStatusCode();
+        Map<String, Object> previousHeaders = new LinkedHashMap<>(previous.getResponseHeaders());
+        Map<String, String> validators = new LinkedHashMap<>();
+        String etag = header(previous, "ETag");
+        if (etag != null) {
+            validators.put("If-None-Match", etag);
+        }
+        String lastModified = header(previous, "Last-Modified");
+        if (lastModified != null) {
+            validators.put("If-Modified-Since", lastModified);
+        }
+        // headers the page set itself are restored afterwards, only the ones added here are removed
+        Map<String, Object> pageHeaders = new LinkedHashMap<>();
+        Map<String, String> added = new LinkedHashMap<>();
+        for (Map.Entry<String, String> validator : validators.entrySet()) {
+            String name = validator.getKey();
+            for (Map.Entry<String, Object> header : fixture.headerValues().entrySet()) {
+                if (name.equalsIgnoreCase(header.getKey())) {
+                    name = header.getKey();
+                    pageHeaders.put(name, header.getValue());
+                }
+            }
+            added.put(name, validator.getValue());
+        }
+        added.forEach((name, value) -> fixture.setValueForHeader(value, name));
+        try {
+            completion.repeat();
+        } finally {
+            for (String name : added.keySet()) {
+                if (pageHeaders.containsKey(name)) {
+                    fixture.setValueForHeader(pageHeaders.get(name), name);
+                } else {
+                    fixture.clearHeaderValue(name);
+                }
+            }
+        }
+        HttpResponse current = fixture.getResponse();
+        if (!validators.isEmpty() && current.getStatusCode() == 304) {
+            current.setStatusCode(previousStatus);
+            // same instance, so parsed versions of the body can be reused
+            current.setResponse(previousBody);
+            Map<String, Object> headers = current.getResponseHeaders();
+            headers.clear();
+            headers.putAll(previousHeaders);
+            return false;
+        }
+        return true;
+    }
+
+    private static String header(HttpResponse response, String name) {
+        for (Map.Entry<String, ?> header : response.getResponseHeaders().entrySet()) {
+            if (name.equalsIgnoreCase(header.getKey()) && header.getValue() != null) {
+                return String.valueOf(header.getValue());
+            }
+        }
+        return null;
+    }
+
+    /**
+     * @return number of repeats done by the last poll.
+     */
+    public int getPollCount() {
+        return pollCount;
+    }
+
+    public Map<String, Object> statistics() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("backoff", backoff);
+        stats.put("repeats", pollCount);
+        stats.put("notModified", notModifiedCount);
+        stats.put("millis", timeSpentPolling);
+        return stats;
+    }
+}
@@ -0,0 +1,166 @@
+package nl.specialisterren.fitnesse.fixture.util;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+
+/**
+ * Body of an HTTP response, read in a single pass that also determines its size, SHA-256 hash and first bytes.
+ * Bodies are kept in memory, or written to a temporary file (for binary or large responses), so checks on
+ * images or subtitles do not need the whole body on the heap.
+ */
+public class ResponseBody {
+    private static final int HEAD_SIZE = 16;
+    private static final char[] HEX = "0123456789abcdef".toCharArray();
+
+    private final byte[] bytes;
+    private final File file;
+    private final long size;
+    private final String sha256;
+    private final byte[] head;
+
+    private ResponseBody(byte[] bytes, File file, long size, byte[] digest, byte[] head) {
+        this.bytes = bytes;
+        this.file = file;
+        this.size = size;
+        this.sha256 = toHex(digest);
+        this.head = head;
+    }
+
+    /**
+     * Reads body into memory.
+     */
+    public static ResponseBody inMemory(InputStream in) throws IOException {
+        return copy(in, new ByteArrayOutputStream(), null);
+    }
+
+    /**
+     * Streams body to a temporary file, which is deleted when the JVM exits (or by {@link #delete()}).
+     */
+    public static ResponseBody toTempFile(InputStream in) throws IOException {
+        File file = File.createTempFile("response-", ".body");
+        file.deleteOnExit();
+        try (OutputStream out = new FileOutputStream(file)) {
+            return copy(in, out, file);
+        }
+    }
+
+    private static ResponseBody copy(InputStream in, OutputStream out, File file) throws IOException {
+        MessageDigest digest;
+        try {
+            digest = MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 not available", e);
+        }
+        byte[] head = new byte[HEAD_SIZE];
+        int headSize = 0;
+        long size = 0;
+        byte[] buffer = new byte[8192];
+        int read;
+        while ((read = in.read(buffer)) != -1) {
+            if (headSize < HEAD_SIZE) {
+                int n = Math.min(read, HEAD_SIZE - headSize);
+                System.arraycopy(buffer, 0, head, headSize, n);
+                headSize += n;
+            }
+            digest.update(buffer, 0, read);
+            out.write(buffer, 0, read);
+            size += read;
+        }
+        byte[] bytes = out instanceof ByteArrayOutputStream ? ((ByteArrayOutputStream) out).toByteArray() : null;
+        return new ResponseBody(bytes, file, size, digest.digest(), Arrays.copyOf(head, headSize));
+    }
+
+    /**
+     * @return body as text, or null when it was written to a file.
+     */
+    public String asString(Charset charset) {
+        return bytes == null ? null : new String(bytes, charset);
+    }
+
+    public boolean isInFile() {
+        return file != null;
+    }
+
+    public File getFile() {
+        return file;
+    }
+
+    public long getSize() {
+        return size;
+    }
+
+    public String getSha256() {
+        return sha256;
+    }
+
+    /**
+     * @return first bytes of the body, in hex.
+     */
+    public String getHead() {
+        return toHex(head);
+    }
+
+    /**
+     * @param hexPrefix bytes in hex (spaces are ignored), e.g. 89504E47 for PNG.
+     * @return whether the body starts with the bytes.
+     */
+    public boolean startsWith(String hexPrefix) {
+        String prefix = hexPrefix.replace(" ", "").toLowerCase();
+        return getHead().startsWith(prefix);
+    }
+
+    /**
+     * @return type of body determined by its first bytes (png, jpeg, gif, webp, pdf, zip, xml, vtt), or null.
+     */
+    public String getMagicType() {
+        String hex = getHead();
+        if (hex.startsWith("89504e470d0a1a0a")) {
+            return "png";
+        } else if (hex.startsWith("ffd8ff")) {
+            return "jpeg";
+        } else if (hex.startsWith("47494638")) {
+            return "gif";
+        } else if (hex.startsWith("52494646") && hex.length() >= 24 && hex.startsWith("57454250", 16)) {
+            return "webp";
+        } else if (hex.startsWith("25504446")) {
+            return "pdf";
+        } else if (hex.startsWith("504b0304")) {
+            return "zip";
+        }
+        String text = new String(head, StandardCharsets.ISO_8859_1);
+        if (hex.startsWith("efbbbf")) {
+            // UTF-8 byte order mark
+            text = text.substring(3);
+        }
+        if (text.startsWith("<")) {
+            return "xml";
+        } else if (text.startsWith("WEBVTT")) {
+            return "vtt";
+        }
+        return null;
+    }
+
+    public void delete() {
+        if (file != null) {
+            file.delete();
+        }
+    }
+
+    private static String toHex(byte[] data) {
+        char[] chars = new char[data.length * 2];
+        for (int i = 0; i < data.length; i++) {
+            chars[i * 2] = HEX[(data[i] >> 4) & 0xf];
+            chars[i * 2 + 1] = HEX[data[i] & 0xf];
+        }
+        return new String(chars);
+    }
+}
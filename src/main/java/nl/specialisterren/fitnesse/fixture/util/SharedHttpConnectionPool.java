@@ -0,0 +1,227 @@
+package nl.specialisterren.fitnesse.fixture.util;
+
+import nl.hsac.fitnesse.fixture.Environment;
+import nl.hsac.fitnesse.fixture.util.HttpClient;
+import org.apache.http.HttpClientConnection;
+import org.apache.http.HttpException;
+import org.apache.http.HttpHost;
+import org.apache.http.HttpRequest;
+import org.apache.http.HttpRequestInterceptor;
+import org.apache.http.HttpResponse;
+import org.apache.http.config.Registry;
+import org.apache.http.config.RegistryBuilder;
+import org.apache.http.conn.DnsResolver;
+import org.apache.http.conn.HttpConnectionFactory;
+import org.apache.http.conn.ManagedHttpClientConnection;
+import org.apache.http.conn.routing.HttpRoute;
+import org.apache.http.conn.socket.ConnectionSocketFactory;
+import org.apache.http.conn.socket.LayeredConnectionSocketFactory;
+import org.apache.http.conn.socket.PlainConnectionSocketFactory;
+import org.apache.http.conn.ssl.SSLConnectionSocketFactory;
+import org.apache.http.impl.client.CloseableHttpClient;
+import org.apache.http.impl.client.HttpClients;
+import org.apache.http.impl.client.LaxRedirectStrategy;
+import org.apache.http.impl.conn.ManagedHttpClientConnectionFactory;
+import org.apache.http.impl.conn.PoolingHttpClientConnectionManager;
+import org.apache.http.impl.conn.SystemDefaultDnsResolver;
+import org.apache.http.pool.PoolStats;
+import org.apache.http.protocol.HttpContext;
+import org.apache.http.protocol.HttpRequestExecutor;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Keep-alive connection pool shared by all HTTP fixtures in the (SLIM) JVM, so a suite pays the TCP and TLS handshake
+ * to each API host once instead of for many of its requests.
+ * The pool is configured using system properties:
+ * <ul>
+ *     <li><code>httpPool.enabled</code>: set to false to keep using hsac's default client (default true)</li>
+ *     <li><code>httpPool.maxPerRoute</code>: maximum number of connections per host (default 20)</li>
+ *     <li><code>httpPool.maxTotal</code>: maximum number of connections (default 100)</li>
+ *     <li><code>httpPool.idleSeconds</code>: connections idle for longer are closed (default 30)</li>
+ * </ul>
+ * The client honours the standard java.net system properties (proxy, SSL), and uses the user agent, redirect strategy
+ * and (disabled) content compression of hsac's default client.
+ * HTTP/2 is not offered: the Apache HttpClient 4 used by hsac-fitnesse-fixtures only speaks HTTP/1.1.
+ * DNS lookup, connect and time to first byte of each request are reported to {@link HttpMetrics}, which also writes
+ * the pool's statistics to its summary.
+ */
+public final class SharedHttpConnectionPool {
+    private static final AtomicBoolean INSTALLED = new AtomicBoolean();
+    private static final LongAdder REQUESTS = new LongAdder();
+    private static final LongAdder CONNECTIONS_OPENED = new LongAdder();
+
+    private static volatile PoolingHttpClientConnectionManager connectionManager;
+    private static volatile CloseableHttpClient client;
+
+    private SharedHttpConnectionPool() {
+    }
+
+    /**
+     * Makes all hsac HTTP fixtures use the shared pool. Only the first call has any effect.
+     */
+    public static void install() {
+        if (Boolean.parseBoolean(System.getProperty("httpPool.enabled", "true"))
+                && INSTALLED.compareAndSet(false, true)) {
+            HttpClient hsacClient = new HttpClient();
+            hsacClient.setHttpClient(getClient());
+            Environment.getInstance().setHttpClient(hsacClient);
+        }
+    }
+
+    /**
+     * @return the pooled Apache client, for code that needs to execute requests outside of hsac's HttpTest.
+     */
+    public static CloseableHttpClient getClient() {
+        if (client == null) {
+            synchronized (SharedHttpConnectionPool.class) {
+                if (client == null) {
+                    client = createClient();
+                }
+            }
+        }
+        return client;
+    }
+
+    private static CloseableHttpClient createClient() {
+        HttpConnectionFactory<HttpRoute, ManagedHttpClientConnection> connectionFactory = (route, config) -> {
+            CONNECTIONS_OPENED.increment();
+            return ManagedHttpClientConnectionFactory.INSTANCE.create(route, config);
+        };
+        Registry<ConnectionSocketFactory> socketFactories = RegistryBuilder.<ConnectionSocketFactory>create()
+                .register("http", new TimedSocketFactory(PlainConnectionSocketFactory.getSocketFactory()))
+                .register("https", new TimedSocketFactory(SSLConnectionSocketFactory.getSystemSocketFactory()))
+                .build();
+        DnsResolver dnsResolver = host -> {
+            long start = System.nanoTime();
+            try {
+                return SystemDefaultDnsResolver.INSTANCE.resolve(host);
+            } finally {
+                HttpMetrics.dnsLookup(System.nanoTime() - start);
+            }
+        };
+        PoolingHttpClientConnectionManager cm = new PoolingHttpClientConnectionManager(socketFactories,
+                connectionFactory, dnsResolver);
+        cm.setDefaultMaxPerRoute(Integer.getInteger("httpPool.maxPerRoute", 20));
+        cm.setMaxTotal(Integer.getInteger("httpPool.maxTotal", 100));
+        // check connections that were idle for a while before reuse, the server may have closed them
+        cm.setValidateAfterInactivity(2000);
+        connectionManager = cm;
+        HttpRequestInterceptor countRequests = (request, context) -> REQUESTS.increment();
+
+        // same defaults as hsac's own HttpClient, so fixtures behave the same with and without the pool
+        return HttpClients.custom()
+                .useSystemProperties()
+                .setUserAgent(HttpClient.class.getName())
+                .disableContentCompression()
+                .setRedirectStrategy(LaxRedirectStrategy.INSTANCE)
+                .setConnectionManager(cm)
+                .evictExpiredConnections()
+                .evictIdleConnections(Long.getLong("httpPool.idleSeconds", 30), TimeUnit.SECONDS)
+                .addInterceptorFirst(countRequests)
+                .setRequestExecutor(new TimedRequestExecutor())
+                .build();
+    }
+
+    // time until the response's headers are received
+    private static final class TimedRequestExecutor extends HttpRequestExecutor {
+        @Override
+        public HttpResponse execute(HttpRequest request, HttpClientConnection conn, HttpContext context)
+                throws IOException, HttpException {
+            long start = System.nanoTime();
+            try {
+                return super.execute(request, conn, context);
+            } finally {
+                HttpMetrics.firstByte(System.nanoTime() - start);
+            }
+        }
+    }
+
+    // connect time, including TLS handshake for https
+    private static final class TimedSocketFactory implements LayeredConnectionSocketFactory {
+        private final ConnectionSocketFactory delegate;
+
+        private TimedSocketFactory(ConnectionSocketFactory delegate) {
+            this.delegate = delegate;
+        }
+
+        @Override
+        public Socket createSocket(HttpContext context) throws IOException {
+            return delegate.createSocket(context);
+        }
+
+        @Override
+        public Socket connectSocket(int connectTimeout, Socket sock, HttpHost host, InetSocketAddress remoteAddress,
+                                    InetSocketAddress localAddress, HttpContext context) throws IOException {
+            long start = System.nanoTime();
+            try {
+                return delegate.connectSocket(connectTimeout, sock, host, remoteAddress, localAddress, context);
+            } finally {
+                HttpMetrics.connect(System.nanoTime() - start);
+            }
+        }
+
+        @Override
+        public Socket createLayeredSocket(Socket socket, String target, int port, HttpContext context)
+                throws IOException {
+            if (!(delegate instanceof LayeredConnectionSocketFactory)) {
+                throw new UnsupportedOperationException("Not a layered socket factory: " + delegate);
+            }
+            return ((LayeredConnectionSocketFactory) delegate).createLayeredSocket(socket, target, port, context);
+        }
+    }
+
+    public static void setMaxPerRoute(int max) {
+        manager().setDefaultMaxPerRoute(max);
+    }
+
+    public static void setMaxTotal(int max) {
+        manager().setMaxTotal(max);
+    }
+
+    public static void closeIdleConnections(int idleSeconds) {
+        manager().closeIdleConnections(idleSeconds, TimeUnit.SECONDS);
+    }
+
+    /**
+     * @return requests executed, connections opened, and the pool's current leased/available/pending/max counts,
+     * in total and per route.
+     */
+    public static Map<String, Object> statistics() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        long requests = REQUESTS.sum();
+        long opened = CONNECTIONS_OPENED.sum();
+        stats.put("requests", requests);
+        stats.put("connectionsOpened", opened);
+        stats.put("connectionReuse", requests == 0 ? "-" : String.format("%.1f%%", 100.0 * (requests - opened) / requests));
+        PoolingHttpClientConnectionManager cm = connectionManager;
+        if (cm != null) {
+            stats.put("total", toMap(cm.getTotalStats()));
+            for (HttpRoute route : cm.getRoutes()) {
+                stats.put(route.getTargetHost().toURI(), toMap(cm.getStats(route)));
+            }
+        }
+        return stats;
+    }
+
+    private static Map<String, Object> toMap(PoolStats poolStats) {
+        Map<String, Object> map = new LinkedHashMap<>();
+        map.put("leased", poolStats.getLeased());
+        map.put("available", poolStats.getAvailable());
+        map.put("pending", poolStats.getPending());
+        map.put("max", poolStats.getMax());
+        return map;
+    }
+
+    private static PoolingHttpClientConnectionManager manager() {
+        getClient();
+        return connectionManager;
+    }
+}
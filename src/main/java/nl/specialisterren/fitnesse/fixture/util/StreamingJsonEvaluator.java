@@ -0,0 +1,249 @@
+package nl.specialisterren.fitnesse.fixture.util;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import nl.hsac.fitnesse.fixture.slim.SlimFixtureException;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Evaluates a restricted set of JsonPath expressions while a JSON body is read, without building the document.
+ * Supported are paths of field names, indexes and wildcards, like <code>$.items[*].result.mid</code> or
+ * <code>$.items[0].broadcasters[*].id</code>. For each path the number of matches and the sum of numeric matches
+ * is determined, and (only when asked for) the matched values are kept. Matched objects and arrays are counted,
+ * but not kept.
+ */
+public class StreamingJsonEvaluator {
+    private static final JsonFactory FACTORY = new JsonFactory();
+    private static final Pattern STEP = Pattern.compile("\\.([^.\\[]+)|\\[(\\*|\\d+)]|\\['([^']+)']");
+    private static final String WILDCARD = "*";
+
+    private final Map<String, PathResult> results = new LinkedHashMap<>();
+    private long bytesProcessed;
+
+    /**
+     * Result of one path.
+     */
+    public static class PathResult {
+        private final List<String> steps;
+        private final int itemDepth;
+        private final boolean keepValues;
+        private final List<Object> values = new ArrayList<>();
+        private long count;
+        private long items;
+        private BigDecimal sum = BigDecimal.ZERO;
+
+        PathResult(List<String> steps, boolean keepValues) {
+            this.steps = steps;
+            this.itemDepth = steps.indexOf(WILDCARD) + 1;
+            this.keepValues = keepValues;
+        }
+
+        public long getCount() {
+            return count;
+        }
+
+        /**
+         * @return number of elements of the array the path's first wildcard selects from (0 without wildcard).
+         */
+        public long getItems() {
+            return items;
+        }
+
+        public BigDecimal getSum() {
+            return sum;
+        }
+
+        public List<Object> getValues() {
+            return values;
+        }
+
+        private void reset() {
+            count = 0;
+            items = 0;
+            sum = BigDecimal.ZERO;
+            values.clear();
+        }
+    }
+
+    /**
+     * Adds a path to evaluate.
+     * @param path path expression ('$.' is added when it does not start with '$').
+     * @param keepValues whether the values matched must be kept, or only counted.
+     */
+    public void addPath(String path, boolean keepValues) {
+        results.put(path, new PathResult(parse(path), keepValues));
+    }
+
+    static List<String> parse(String path) {
+        String expression = JsonPaths.normalise(path).substring(1);
+        List<String> steps = new ArrayList<>();
+        Matcher m = STEP.matcher(expression);
+        int end = 0;
+        while (m.find() && m.start() == end) {
+            steps.add(m.group(1) != null ? m.group(1) : m.group(2) != null ? m.group(2) : m.group(3));
+            end = m.end();
+        }
+        if (end != expression.length()) {
+            throw new SlimFixtureException(false, "Path not supported for streaming: " + path
+                    + ", use field names, indexes and [*] only");
+        }
+        return steps;
+    }
+
+    /**
+     * Reads the JSON from the stream, evaluating all paths added.
+     * @param in stream to read (not closed).
+     */
+    public void evaluate(InputStream in) throws IOException {
+        for (PathResult result : results.values()) {
+            result.reset();
+        }
+        CountingInputStream counting = new CountingInputStream(in);
+        List<String> current = new ArrayList<>();
+        // per depth: index of the next array element, or -1 inside an object
+        List<Integer> arrayIndexes = new ArrayList<>();
+        try (JsonParser parser = FACTORY.createParser(counting)) {
+            JsonToken token;
+            while ((token = parser.nextToken()) != null) {
+                if (token == JsonToken.FIELD_NAME) {
+                    current.set(current.size() - 1, parser.getCurrentName());
+                    continue;
+                }
+                if (token == JsonToken.END_OBJECT || token == JsonToken.END_ARRAY) {
+                    current.remove(current.size() - 1);
+                    arrayIndexes.remove(arrayIndexes.size() - 1);
+                    continue;
+                }
+                if (!arrayIndexes.isEmpty()) {
+                    int last = arrayIndexes.size() - 1;
+                    int index = arrayIndexes.get(last);
+                    if (index >= 0) {
+                        current.set(last, Integer.toString(index));
+                        arrayIndexes.set(last, index + 1);
+                    }
+                }
+                boolean needed = match(current, token, parser);
+                if (token == JsonToken.START_OBJECT || token == JsonToken.START_ARRAY) {
+                    if (needed) {
+                        current.add(null);
+                        arrayIndexes.add(token == JsonToken.START_ARRAY ? 0 : -1);
+                    } else {
+                        parser.skipChildren();
+                    }
+                }
+            }
+        }
+        bytesProcessed = counting.count;
+    }
+
+    // records matches of the value at current, returns whether any path needs the value's children
+    private boolean match(List<String> current, JsonToken token, JsonParser parser) throws IOException {
+        boolean needed = current.isEmpty();
+        for (PathResult result : results.values()) {
+            int matched = matchedSteps(result.steps, current);
+            if (matched < current.size()) {
+                continue;
+            }
+            if (current.size() == result.steps.size()) {
+                result.count++;
+                if (token.isNumeric()) {
+                    result.sum = result.sum.add(parser.getDecimalValue());
+                }
+                if (result.keepValues && token.isScalarValue()) {
+                    result.values.add(value(token, parser));
+                }
+            } else {
+                needed = true;
+            }
+            if (result.itemDepth > 0 && current.size() == result.itemDepth) {
+                result.items++;
+            }
+        }
+        return needed;
+    }
+
+    private static int matchedSteps(List<String> steps, List<String> current) {
+        int i = 0;
+        while (i < current.size() && i < steps.size()) {
+            String step = steps.get(i);
+            if (!WILDCARD.equals(step) && !step.equals(current.get(i))) {
+                break;
+            }
+            i++;
+        }
+        return i;
+    }
+
+    private static Object value(JsonToken token, JsonParser parser) throws IOException {
+        switch (token) {
+            case VALUE_STRING:
+                return parser.getText();
+            case VALUE_NUMBER_INT:
+            case VALUE_NUMBER_FLOAT:
+                return parser.getNumberValue();
+            case VALUE_TRUE:
+            case VALUE_FALSE:
+                return parser.getBooleanValue();
+            default:
+                return null;
+        }
+    }
+
+    /**
+     * @param path path as added.
+     * @return result of path in last evaluation.
+     */
+    public PathResult getResult(String path) {
+        PathResult result = results.get(path);
+        if (result == null) {
+            throw new SlimFixtureException(false, "Path was not streamed: " + path);
+        }
+        return result;
+    }
+
+    public long getBytesProcessed() {
+        return bytesProcessed;
+    }
+
+    private static final class CountingInputStream extends FilterInputStream {
+        private long count;
+
+        private CountingInputStream(InputStream in) {
+            super(in);
+        }
+
+        @Override
+        public int read() throws IOException {
+            int b = super.read();
+            if (b >= 0) {
+                count++;
+            }
+            return b;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            int n = super.read(b, off, len);
+            if (n > 0) {
+                count += n;
+            }
+            return n;
+        }
+
+        @Override
+        public void close() {
+            // the caller closes the underlying stream
+        }
+    }
+}
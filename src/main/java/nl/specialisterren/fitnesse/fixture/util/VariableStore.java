@@ -0,0 +1,245 @@
+package nl.specialisterren.fitnesse.fixture.util;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Variables passed between wiki pages, scoped to a test run.
+ * Values are kept in a concurrent map, so reads do not lock, and appended to a log file per run, so values are
+ * visible to the other JVMs of a parallel run (and to pages run in another SLIM server of the same run). A variable
+ * that is not known in memory is looked up in the part of the file other processes appended since it was last read.
+ * <p>
+ * The run is identified by system property <code>fitnesseRunId</code>, by default the Jenkins BUILD_TAG or, when
+ * neither is set, an id derived from the working directory. So, as with the java.util.prefs store this replaced,
+ * pages run from a local wiki see the values stored by earlier pages, also when each page runs in a new SLIM server;
+ * use {@link #clear()} (variable fixture's clear variables) to start over. The parallel runner starts a fresh run
+ * using {@link #newRunId()}. The file is stored in the directory set by system property
+ * <code>variableStore.dir</code> (default: java.io.tmpdir/poms-fitnesse-variables), where files of runs that ended
+ * more than a day ago are removed; set <code>variableStore.persist</code> to false to only keep values in memory.
+ * </p>
+ * In a parallel run, values are kept per shard (system property <code>fitnesseShard</code>): a page sees the values
+ * stored by pages of its own shard, and those stored by shards of earlier stages (system property
+ * <code>fitnesseShardStage</code>, e.g. a 1_SetUp page), but not those of shards running at the same time.
+ */
+public final class VariableStore {
+    private static final long MAX_AGE_MILLIS = TimeUnit.DAYS.toMillis(1);
+    private static volatile VariableStore instance;
+
+    private final Map<String, String> values = new ConcurrentHashMap<>();
+    // values stored by shards of earlier stages
+    private final Map<String, String> earlierValues = new ConcurrentHashMap<>();
+    private final File file;
+    private final String shard;
+    private final int stage;
+    private FileChannel channel;
+    private long readOffset;
+
+    VariableStore(File file) {
+        this(file, System.getProperty("fitnesseShard", ""), Integer.getInteger("fitnesseShardStage", 0));
+    }
+
+    VariableStore(File file, String shard, int stage) {
+        this.file = file;
+        this.shard = shard;
+        this.stage = stage;
+    }
+
+    /**
+     * @return store for the current run.
+     */
+    public static VariableStore getInstance() {
+        if (instance == null) {
+            synchronized (VariableStore.class) {
+                if (instance == null) {
+                    File file = null;
+                    if (persist()) {
+                        file = runFile();
+                        removeOldRunFiles(file.getParentFile());
+                    }
+                    instance = new VariableStore(file);
+                }
+            }
+        }
+        return instance;
+    }
+
+    /**
+     * @return identifier of the current run.
+     */
+    public static synchronized String runId() {
+        String runId = configuredRunId();
+        // the same for all SLIM servers started by a local FitNesse
+        return runId == null ? "local-" + Integer.toHexString(new File("").getAbsolutePath().hashCode()) : runId;
+    }
+
+    /**
+     * Starts a new run, unless the run id is configured (fitnesseRunId or BUILD_TAG), so values of earlier runs
+     * do not leak into this one. The id is set as fitnesseRunId, so worker JVMs started afterwards use it too.
+     * @return identifier of the current run.
+     */
+    public static synchronized String newRunId() {
+        String runId = configuredRunId();
+        if (runId == null) {
+            runId = "run-" + System.currentTimeMillis();
+            System.setProperty("fitnesseRunId", runId);
+        }
+        return runId;
+    }
+
+    private static String configuredRunId() {
+        String runId = System.getProperty("fitnesseRunId");
+        if (runId == null || runId.isEmpty() || runId.startsWith("${")) {
+            runId = System.getenv("BUILD_TAG");
+        }
+        return runId == null || runId.isEmpty() ? null : runId;
+    }
+
+    private static boolean persist() {
+        return Boolean.parseBoolean(System.getProperty("variableStore.persist", "true"));
+    }
+
+    private static File runFile() {
+        String dir = System.getProperty("variableStore.dir",
+                new File(System.getProperty("java.io.tmpdir"), "poms-fitnesse-variables").getPath());
+        return new File(dir, runId().replaceAll("[^\\w.-]", "_") + ".log");
+    }
+
+    private static void removeOldRunFiles(File dir) {
+        File[] files = dir.listFiles((d, name) -> name.endsWith(".log"));
+        if (files != null) {
+            long cutOff = System.currentTimeMillis() - MAX_AGE_MILLIS;
+            for (File old : files) {
+                if (old.lastModified() < cutOff) {
+                    old.delete();
+                }
+            }
+        }
+    }
+
+    /**
+     * @param name variable name.
+     * @return value of variable, or null if it was not set in this run (by this shard or one of an earlier stage).
+     */
+    public String get(String name) {
+        String value = values.get(name);
+        if (value == null && file != null) {
+            readAppended();
+            value = values.get(name);
+        }
+        return value == null ? earlierValues.get(name) : value;
+    }
+
+    public void put(String name, String value) {
+        values.put(name, value);
+        if (file != null) {
+            append(stage + "\t" + escape(shard) + '\t' + escape(name) + '\t' + escape(value) + '\n');
+        }
+    }
+
+    /**
+     * Removes all values of the current run. Other processes using the run see this once they look up a variable
+     * they do not know.
+     */
+    public synchronized void clear() {
+        values.clear();
+        earlierValues.clear();
+        if (file != null) {
+            try {
+                channel().truncate(0);
+            } catch (IOException e) {
+                throw new IllegalStateException("Unable to clear variables in: " + file, e);
+            }
+            readOffset = 0;
+        }
+    }
+
+    private synchronized void append(String record) {
+        try {
+            // a single write to a file opened for append is not interleaved with writes by other processes
+            channel().write(ByteBuffer.wrap(record.getBytes(StandardCharsets.UTF_8)));
+        } catch (IOException e) {
+            throw new IllegalStateException("Unable to store variable in: " + file, e);
+        }
+    }
+
+    private FileChannel channel() throws IOException {
+        if (channel == null) {
+            file.getParentFile().mkdirs();
+            channel = FileChannel.open(file.toPath(), StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                    StandardOpenOption.APPEND);
+        }
+        return channel;
+    }
+
+    private synchronized void readAppended() {
+        long length = file.length();
+        if (length < readOffset) {
+            // cleared by another process
+            values.clear();
+            earlierValues.clear();
+            readOffset = 0;
+        }
+        if (length <= readOffset) {
+            return;
+        }
+        try (RandomAccessFile in = new RandomAccessFile(file, "r")) {
+            byte[] bytes = new byte[(int) (in.length() - readOffset)];
+            in.seek(readOffset);
+            in.readFully(bytes);
+            int start = 0;
+            for (int i = 0; i < bytes.length; i++) {
+                if (bytes[i] == '\n') {
+                    read(new String(bytes, start, i - start, StandardCharsets.UTF_8));
+                    start = i + 1;
+                }
+            }
+            // a partially written record is read again next time
+            readOffset += start;
+        } catch (IOException e) {
+            throw new IllegalStateException("Unable to read variables from: " + file, e);
+        }
+    }
+
+    // record: stage, shard, name and value, separated by tabs
+    private void read(String record) {
+        String[] fields = record.split("\t", 4);
+        if (fields.length < 4) {
+            return;
+        }
+        String recordShard = unescape(fields[1]);
+        if (recordShard.equals(shard)) {
+            values.put(unescape(fields[2]), unescape(fields[3]));
+        } else if (Integer.parseInt(fields[0]) < stage) {
+            earlierValues.put(unescape(fields[2]), unescape(fields[3]));
+        }
+    }
+
+    private static String escape(String value) {
+        return value.replace("\\", "\\\\").replace("\t", "\\t").replace("\n", "\\n");
+    }
+
+    private static String unescape(String value) {
+        if (value.indexOf('\\') < 0) {
+            return value;
+        }
+        StringBuilder sb = new StringBuilder(value.length());
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c == '\\' && i + 1 < value.length()) {
+                char next = value.charAt(++i);
+                sb.append(next == 't' ? '\t' : next == 'n' ? '\n' : next);
+            } else {
+                sb.append(c);
+            }
+        }
+        return sb.toString();
+    }
+}
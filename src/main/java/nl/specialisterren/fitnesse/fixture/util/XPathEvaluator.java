@@ -0,0 +1,125 @@
+package nl.specialisterren.fitnesse.fixture.util;
+
+import org.w3c.dom.Document;
+import org.xml.sax.InputSource;
+import org.xml.sax.SAXException;
+import org.xml.sax.helpers.DefaultHandler;
+
+import javax.xml.namespace.NamespaceContext;
+import javax.xml.parsers.DocumentBuilder;
+import javax.xml.parsers.DocumentBuilderFactory;
+import javax.xml.parsers.ParserConfigurationException;
+import javax.xml.xpath.XPath;
+import javax.xml.xpath.XPathConstants;
+import javax.xml.xpath.XPathExpression;
+import javax.xml.xpath.XPathExpressionException;
+import javax.xml.xpath.XPathFactory;
+import java.io.IOException;
+import java.io.StringReader;
+import java.util.Map;
+
+/**
+ * Evaluates XPath expressions against an XML text that is parsed only once (until a different text is evaluated),
+ * using compiled expressions kept in a bounded cache.
+ * Compiled expressions hold the namespaces of the namespace context they were compiled with, so the cache must be
+ * cleared (see {@link #clear()}) when a prefix is (re)registered. Instances are not thread-safe, like the fixtures
+ * using them. Documents with a DOCTYPE are rejected, so external entities are never resolved.
+ */
+public class XPathEvaluator {
+    private static final ThreadLocal<DocumentBuilder> BUILDER = ThreadLocal.withInitial(() -> {
+        try {
+            DocumentBuilderFactory factory = DocumentBuilderFactory.newInstance();
+            factory.setNamespaceAware(true);
+            // responses come from the systems under test: no DTDs, so no external entities either
+            factory.setFeature("http://apache.org/xml/features/disallow-doctype-decl", true);
+            factory.setFeature("http://xml.org/sax/features/external-general-entities", false);
+            factory.setFeature("http://xml.org/sax/features/external-parameter-entities", false);
+            factory.setFeature("http://apache.org/xml/features/nonvalidating/load-external-dtd", false);
+            factory.setXIncludeAware(false);
+            factory.setExpandEntityReferences(false);
+            DocumentBuilder builder = factory.newDocumentBuilder();
+            // errors are thrown, not also printed to System.err
+            builder.setErrorHandler(new DefaultHandler());
+            return builder;
+        } catch (ParserConfigurationException e) {
+            throw new IllegalStateException("Unable to create XML parser", e);
+        }
+    });
+
+    private final XPath xPath = XPathFactory.newInstance().newXPath();
+    private final LruCache<String, XPathExpression> compiled;
+    private String parsedXml;
+    private Document document;
+
+    public XPathEvaluator(NamespaceContext namespaceContext, int cacheSize) {
+        xPath.setNamespaceContext(namespaceContext);
+        compiled = new LruCache<>(cacheSize);
+    }
+
+    /**
+     * @param xml XML text, only parsed when it differs (by identity) from the previous call's.
+     * @param expression XPath expression.
+     * @return string value of the expression, or null when it does not match any node.
+     * @throws XPathExpressionException when the expression is invalid.
+     * @throws SAXException when xml is not valid XML.
+     */
+    public String evaluate(String xml, String expression) throws XPathExpressionException, SAXException {
+        Document doc = document(xml);
+        XPathExpression compiledExpression = compile(expression);
+        String result = compiledExpression.evaluate(doc);
+        if (result.isEmpty()) {
+            // distinguish an empty element from no match, for expressions that select nodes
+            try {
+                if (compiledExpression.evaluate(doc, XPathConstants.NODE) == null) {
+                    result = null;
+                }
+            } catch (XPathExpressionException e) {
+                // expression does not select nodes (e.g. a string function), empty is its value
+            }
+        }
+        return result;
+    }
+
+    private XPathExpression compile(String expression) throws XPathExpressionException {
+        try {
+            return compiled.get(expression, e -> {
+                try {
+                    return xPath.compile(e);
+                } catch (XPathExpressionException ex) {
+                    throw new IllegalArgumentException(ex);
+                }
+            });
+        } catch (IllegalArgumentException e) {
+            if (e.getCause() instanceof XPathExpressionException) {
+                throw (XPathExpressionException) e.getCause();
+            }
+            throw e;
+        }
+    }
+
+    private Document document(String xml) throws SAXException {
+        // identity check on purpose: a response's body is the same String instance until a new response is received
+        if (xml != parsedXml) {
+            document = null;
+            parsedXml = null;
+            try {
+                document = BUILDER.get().parse(new InputSource(new StringReader(xml)));
+            } catch (IOException e) {
+                throw new IllegalStateException("Unable to read XML from string", e);
+            }
+            parsedXml = xml;
+        }
+        return document;
+    }
+
+    /**
+     * Removes all compiled expressions.
+     */
+    public void clear() {
+        compiled.clear();
+    }
+
+    public Map<String, Object> statistics() {
+        return compiled.statistics();
+    }
+}
@@ -0,0 +1,42 @@
+// Returns visibility, rendered text and the requested attributes of all elements passed, in one call.
+// Arguments: list of elements, list of attribute names.
+var elements = arguments[0];
+var attributeNames = arguments[1] || [];
+
+var isDisplayed = function (element) {
+    if (!element.isConnected && !document.documentElement.contains(element)) {
+        return false;
+    }
+    if (!(element.offsetWidth || element.offsetHeight || element.getClientRects().length)) {
+        return false;
+    }
+    var style = window.getComputedStyle(element);
+    if (style.visibility === 'hidden' || style.visibility === 'collapse') {
+        return false;
+    }
+    for (var node = element; node && node.nodeType === 1; node = node.parentElement) {
+        if (window.getComputedStyle(node).opacity === '0') {
+            return false;
+        }
+    }
+    return true;
+};
+
+var result = [];
+for (var i = 0; i < elements.length; i++) {
+    var element = elements[i];
+    var displayed = isDisplayed(element);
+    // innerText gives the rendered text, also for elements outside of the viewport
+    var text = displayed ? (element.innerText || '') : (element.textContent || '');
+    var attributes = {};
+    for (var j = 0; j < attributeNames.length; j++) {
+        var value = element.getAttribute(attributeNames[j]);
+        attributes[attributeNames[j]] = value === null ? null : String(value);
+    }
+    result.push({
+        displayed: displayed,
+        text: text.replace(/\u00a0/g, ' ').trim(),
+        attributes: attributes
+    });
+}
+return result;
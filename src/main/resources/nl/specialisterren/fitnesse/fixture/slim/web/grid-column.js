@@ -0,0 +1,27 @@
+// Returns the text of one column for every displayed row of a table body, in one call.
+// Arguments: table (or element containing it), CSS selector of the cell within a row.
+// Rows without a matching cell result in null.
+var table = arguments[0];
+var cellSelector = arguments[1];
+
+var isDisplayed = function (element) {
+    if (!(element.offsetWidth || element.offsetHeight || element.getClientRects().length)) {
+        return false;
+    }
+    var style = window.getComputedStyle(element);
+    return style.visibility !== 'hidden' && style.visibility !== 'collapse';
+};
+
+var body = table.tagName.toLowerCase() === 'tbody' ? table : table.querySelector('tbody');
+if (!body) {
+    return null;
+}
+var rows = body.querySelectorAll('tr');
+var result = [];
+for (var i = 0; i < rows.length; i++) {
+    if (isDisplayed(rows[i])) {
+        var cell = rows[i].querySelector(cellSelector);
+        result.push(cell ? (cell.innerText || cell.textContent || '').replace(/\u00a0/g, ' ').trim() : null);
+    }
+}
+return result;
@@ -0,0 +1,131 @@
+// Installs the instrumentation network-idle.js waits on: counts pending XHR, fetch and short timers.
+// This is a function expression, called as (script)(window, maxTimerDelay) either by network-idle.js or, where the
+// driver supports it, before any script of each new document runs (so requests started early are counted too).
+// When installed late, requests that were in flight already are taken from Resource Timing where the browser
+// lists them without responseEnd; they count as pending until a finished entry for them shows up.
+function (w, maxTrackedTimerDelay) {
+    var idle = w.specialisterrenNetworkIdle;
+    if (!idle) {
+        idle = w.specialisterrenNetworkIdle = {
+            pending: 0,
+            timers: {},
+            listeners: [],
+            maxTimerDelay: maxTrackedTimerDelay,
+            setTimeout: w.setTimeout.bind(w),
+            clearTimeout: w.clearTimeout.bind(w),
+            change: function (delta) {
+                idle.pending = Math.max(0, idle.pending + delta);
+                var listeners = idle.listeners.slice();
+                for (var i = 0; i < listeners.length; i++) {
+                    listeners[i]();
+                }
+            }
+        };
+
+        var send = XMLHttpRequest.prototype.send;
+        XMLHttpRequest.prototype.send = function () {
+            var counted = true;
+            var finish = function () {
+                if (counted) {
+                    counted = false;
+                    idle.change(-1);
+                }
+            };
+            idle.change(1);
+            this.addEventListener('loadend', finish);
+            try {
+                return send.apply(this, arguments);
+            } catch (e) {
+                finish();
+                throw e;
+            }
+        };
+
+        if (w.fetch) {
+            var fetch = w.fetch;
+            w.fetch = function () {
+                var counted = true;
+                var finish = function () {
+                    if (counted) {
+                        counted = false;
+                        idle.change(-1);
+                    }
+                };
+                idle.change(1);
+                var result;
+                try {
+                    result = fetch.apply(this, arguments);
+                } catch (e) {
+                    finish();
+                    throw e;
+                }
+                result.then(finish, finish);
+                return result;
+            };
+        }
+
+        w.setTimeout = function (callback, delay) {
+            var d = delay === undefined ? 0 : Number(delay);
+            if (typeof callback !== 'function' || !(d <= idle.maxTimerDelay)) {
+                return idle.setTimeout.apply(w, arguments);
+            }
+            var args = Array.prototype.slice.call(arguments, 2);
+            var id = idle.setTimeout(function () {
+                try {
+                    callback.apply(w, args);
+                } finally {
+                    if (idle.timers[id]) {
+                        delete idle.timers[id];
+                        idle.change(-1);
+                    }
+                }
+            }, d);
+            idle.timers[id] = true;
+            idle.change(1);
+            return id;
+        };
+        w.clearTimeout = function (id) {
+            if (idle.timers[id]) {
+                delete idle.timers[id];
+                idle.change(-1);
+            }
+            return idle.clearTimeout(id);
+        };
+
+        if (document.readyState !== 'complete') {
+            idle.change(1);
+            w.addEventListener('load', function () {
+                idle.change(-1);
+            });
+        }
+
+        var timing = w.performance;
+        if (timing && timing.getEntriesByType) {
+            var isRequest = function (entry) {
+                return entry.initiatorType === 'xmlhttprequest' || entry.initiatorType === 'fetch';
+            };
+            var inFlight = timing.getEntriesByType('resource').filter(function (entry) {
+                return isRequest(entry) && !(entry.responseEnd > 0);
+            });
+            if (inFlight.length > 0) {
+                idle.change(inFlight.length);
+                var recheck = function () {
+                    inFlight = inFlight.filter(function (entry) {
+                        var finished = timing.getEntriesByName(entry.name).some(function (other) {
+                            return isRequest(other) && other.startTime === entry.startTime && other.responseEnd > 0;
+                        });
+                        if (finished) {
+                            idle.change(-1);
+                        }
+                        return !finished;
+                    });
+                    if (inFlight.length > 0) {
+                        idle.setTimeout(recheck, 50);
+                    }
+                };
+                idle.setTimeout(recheck, 50);
+            }
+        }
+    }
+    return idle;
+}
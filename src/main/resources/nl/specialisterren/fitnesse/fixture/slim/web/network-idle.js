@@ -0,0 +1,48 @@
+// Waits (asynchronously) until the page has had no pending XHR, fetch or short timers for a quiet period.
+// Arguments: quiet period (ms), max delay of timers that count as pending (ms), timeout (ms), WebDriver callback.
+// Java prepends 'var install = <network-idle-install.js>;', which only installs the instrumentation when the
+// document does not have it yet (e.g. it was not added at document creation).
+var quietPeriod = arguments[0];
+var maxTrackedTimerDelay = arguments[1];
+var timeout = arguments[2];
+var done = arguments[arguments.length - 1];
+var w = window;
+
+var idle = install(w, maxTrackedTimerDelay);
+idle.maxTimerDelay = maxTrackedTimerDelay;
+
+var start = Date.now();
+var finished = false;
+var quietTimer = null;
+var deadlineTimer = null;
+var check = function () {
+    if (quietTimer !== null) {
+        idle.clearTimeout(quietTimer);
+        quietTimer = null;
+    }
+    if (idle.pending === 0) {
+        quietTimer = idle.setTimeout(function () {
+            if (idle.pending === 0) {
+                finish(true);
+            }
+        }, quietPeriod);
+    }
+};
+var finish = function (isIdle) {
+    if (finished) {
+        return;
+    }
+    finished = true;
+    idle.clearTimeout(quietTimer);
+    idle.clearTimeout(deadlineTimer);
+    var index = idle.listeners.indexOf(check);
+    if (index >= 0) {
+        idle.listeners.splice(index, 1);
+    }
+    done({idle: isIdle, pending: idle.pending, waited: Date.now() - start});
+};
+idle.listeners.push(check);
+deadlineTimer = idle.setTimeout(function () {
+    finish(false);
+}, timeout);
+check();
@@ -0,0 +1,62 @@
+// Collects the performance entries of the current document since the previous call: navigation timing (once per
+// document), XHR/fetch resource timing and long tasks. Resource timings read are cleared, so the browser's buffer
+// does not fill up. The long task observer is installed once per document; long tasks before it are not seen.
+var w = window;
+var perf = w.performance;
+if (!perf || !perf.getEntriesByType) {
+    return null;
+}
+
+var state = w.specialisterrenPagePerformance;
+if (!state) {
+    state = w.specialisterrenPagePerformance = {navigationReported: false, longTasks: []};
+    if (perf.setResourceTimingBufferSize) {
+        perf.setResourceTimingBufferSize(1000);
+    }
+    if (w.PerformanceObserver) {
+        try {
+            new PerformanceObserver(function (list) {
+                var entries = list.getEntries();
+                for (var i = 0; i < entries.length; i++) {
+                    state.longTasks.push(entries[i].duration);
+                }
+            }).observe({entryTypes: ['longtask']});
+        } catch (e) {
+            // long tasks are not supported by this browser
+        }
+    }
+}
+
+var result = {page: location.pathname + location.hash, navigation: null, requests: [], longTasks: state.longTasks};
+state.longTasks = [];
+
+if (!state.navigationReported) {
+    var navigation = perf.getEntriesByType('navigation')[0];
+    var timing = perf.timing;
+    if (navigation && navigation.loadEventEnd > 0) {
+        result.navigation = {
+            firstByte: navigation.responseStart,
+            domContentLoaded: navigation.domContentLoadedEventEnd,
+            load: navigation.loadEventEnd
+        };
+    } else if (!navigation && timing && timing.loadEventEnd > 0) {
+        result.navigation = {
+            firstByte: timing.responseStart - timing.navigationStart,
+            domContentLoaded: timing.domContentLoadedEventEnd - timing.navigationStart,
+            load: timing.loadEventEnd - timing.navigationStart
+        };
+    }
+    state.navigationReported = result.navigation !== null;
+}
+
+var resources = perf.getEntriesByType('resource');
+for (var i = 0; i < resources.length; i++) {
+    var r = resources[i];
+    if (r.initiatorType === 'xmlhttprequest' || r.initiatorType === 'fetch') {
+        result.requests.push({url: r.name, duration: r.duration});
+    }
+}
+if (perf.clearResourceTimings) {
+    perf.clearResourceTimings();
+}
+return result;
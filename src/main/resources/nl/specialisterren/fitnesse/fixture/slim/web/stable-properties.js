@@ -0,0 +1,86 @@
+// Waits (asynchronously) until properties of elements have not changed for a quiet period.
+// The properties are sampled every animation frame, and mutations of the elements (or their content) also count
+// as a change, so a value that changes and changes back between two samples is still noticed.
+// Arguments: list of elements, list of property names, quiet period (ms), timeout (ms), WebDriver callback.
+var elements = arguments[0];
+var properties = arguments[1];
+var quietPeriod = arguments[2];
+var timeout = arguments[3];
+var done = arguments[arguments.length - 1];
+var w = window;
+// not counted as pending work by network-idle.js
+var setTimer = w.specialisterrenNetworkIdle ? w.specialisterrenNetworkIdle.setTimeout : w.setTimeout.bind(w);
+
+var read = function () {
+    var values = [];
+    for (var i = 0; i < elements.length; i++) {
+        for (var j = 0; j < properties.length; j++) {
+            var value = elements[i][properties[j]];
+            values.push(value === undefined || value === null ? null : String(value));
+        }
+    }
+    return values;
+};
+
+var start = Date.now();
+var lastChange = start;
+var changes = 0;
+var finished = false;
+var previous = read();
+var previousKey = JSON.stringify(previous);
+var observer = null;
+
+var changed = function () {
+    lastChange = Date.now();
+    changes++;
+};
+
+var finish = function (stable) {
+    if (finished) {
+        return;
+    }
+    finished = true;
+    if (observer) {
+        observer.disconnect();
+    }
+    done({stable: stable, waited: Date.now() - start, settledAfter: lastChange - start, changes: changes,
+        values: previous});
+};
+
+var sample = function () {
+    if (finished) {
+        return;
+    }
+    var current = read();
+    var currentKey = JSON.stringify(current);
+    if (currentKey !== previousKey) {
+        previous = current;
+        previousKey = currentKey;
+        changed();
+    }
+    var now = Date.now();
+    if (now - lastChange >= quietPeriod) {
+        finish(true);
+    } else if (now - start >= timeout) {
+        finish(false);
+    } else {
+        schedule();
+    }
+};
+
+var schedule = function () {
+    // animation frames are not delivered to hidden documents
+    if (w.requestAnimationFrame && document.visibilityState !== 'hidden') {
+        w.requestAnimationFrame(sample);
+    } else {
+        setTimer(sample, 16);
+    }
+};
+
+if (w.MutationObserver) {
+    observer = new MutationObserver(changed);
+    for (var i = 0; i < elements.length; i++) {
+        observer.observe(elements[i], {attributes: true, childList: true, characterData: true, subtree: true});
+    }
+}
+schedule();
@@ -0,0 +1,105 @@
+package nl.hsac.fitnesse.example;
+
+import fitnesse.junit.FitNesseRunner;
+import nl.specialisterren.fitnesse.fixture.util.VariableStore;
+import nl.specialisterren.fitnesse.junit.ChangeImpact;
+import nl.specialisterren.fitnesse.junit.ParallelSuiteRunner;
+import nl.specialisterren.fitnesse.junit.SuiteSharder;
+import nl.specialisterren.fitnesse.junit.WikiDependencyIndexer;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Runs the suite FixtureDebugTest would run, split in shards that run in parallel worker JVMs.
+ * Used by build server with: mvn verify -Pparallel -DfitnesseSuiteToRun=...
+ * Configured by system properties:
+ * <ul>
+ *     <li><code>fitnesseShardWorkers</code>: number of worker JVMs (default: number of processors)</li>
+ *     <li><code>fitnesseShardDepth</code>: number of levels the suite is split (default 2)</li>
+ *     <li><code>fitnesseShardPhased</code>: whether suites with ordering pages (1_SetUp, _TearDown) are split in
+ *     stages instead of run whole (default true)</li>
+ *     <li><code>fitnesseShardBrowsers</code>: browsers to run the suite for, e.g. Firefox,Chrome. The suite name must
+ *     contain {browser}, e.g. NpoPoms.Omgevingen.Test.{browser}.Gui (default: none, run the suite as is)</li>
+ *     <li><code>fitnesseShardHeadless</code>: whether the browsers run headless, when fitnesseShardBrowsers is set
+ *     (default true)</li>
+ *     <li><code>fitnesseChangedSince</code>: git revision (e.g. origin/master), to only run the pages affected by the
+ *     changes since (see ChangeImpact) instead of the whole suite (default: none, run the whole suite)</li>
+ *     <li><code>fitnesseDependencyIndex</code>: file the wiki's dependencies are kept in between runs, for
+ *     fitnesseChangedSince (default target/wiki-dependency-index.tsv)</li>
+ * </ul>
+ */
+public class ParallelFixtureDebugTest {
+    @Test
+    public void runShards() throws Exception {
+        String suite = property("fitnesseSuiteToRun");
+        if (suite.isEmpty()) {
+            suite = FixtureDebugTest.class.getAnnotation(FitNesseRunner.Suite.class).value();
+        }
+        int workers = Integer.getInteger("fitnesseShardWorkers", Runtime.getRuntime().availableProcessors());
+        int depth = Integer.getInteger("fitnesseShardDepth", 2);
+        boolean phased = !"false".equals(System.getProperty("fitnesseShardPhased"));
+        // a fresh fitnesseRunId (when not set), so all workers use the same new variable store
+        VariableStore.newRunId();
+
+        SuiteSharder sharder = new SuiteSharder(new File("wiki/FitNesseRoot"), phased);
+        ChangeImpact impact = null;
+        String changedSince = property("fitnesseChangedSince");
+        if (!changedSince.isEmpty()) {
+            String indexFile = property("fitnesseDependencyIndex");
+            WikiDependencyIndexer indexer = new WikiDependencyIndexer(new File("."),
+                    new File(indexFile.isEmpty() ? "target/wiki-dependency-index.tsv" : indexFile));
+            System.out.println("Indexed " + indexer.update() + " changed files");
+            impact = new ChangeImpact(indexer, sharder);
+            impact.readChangesSince(changedSince);
+            System.out.println("Changes since " + changedSince + ": " + impact);
+        }
+
+        ParallelSuiteRunner runner = new ParallelSuiteRunner(workers);
+        List<ParallelSuiteRunner.ShardResult> results;
+        String browsers = property("fitnesseShardBrowsers");
+        if (browsers.isEmpty()) {
+            List<List<String>> plan = impact == null ? sharder.plan(suite, depth) : impact.plan(suite, depth);
+            System.out.println("Running " + suite + " with " + workers + " workers in stages: " + plan);
+            results = runner.run(plan);
+            if (!plan.isEmpty()) {
+                runner.mergeReports();
+            }
+        } else {
+            Assert.assertTrue("Suite must contain {browser}: " + suite, suite.contains("{browser}"));
+            runner.setHeadless(!"false".equals(System.getProperty("fitnesseShardHeadless")));
+            Map<String, List<List<String>>> plans = new LinkedHashMap<>();
+            for (String browser : browsers.split("\\s*,\\s*")) {
+                String browserSuite = suite.replace("{browser}", browser);
+                plans.put(browser, impact == null ? sharder.plan(browserSuite, depth)
+                        : impact.plan(browserSuite, depth));
+            }
+            System.out.println("Running " + suite + " with " + workers + " workers in stages: " + plans);
+            results = runner.runForBrowsers(plans);
+            for (Map.Entry<String, List<List<String>>> plan : plans.entrySet()) {
+                if (!plan.getValue().isEmpty()) {
+                    runner.mergeReports(plan.getKey());
+                }
+            }
+        }
+
+        List<ParallelSuiteRunner.ShardResult> failed = new ArrayList<>();
+        for (ParallelSuiteRunner.ShardResult result : results) {
+            if (!result.isSuccess()) {
+                failed.add(result);
+            }
+        }
+        Assert.assertTrue("Failed shards: " + failed, failed.isEmpty());
+    }
+
+    // an unset maven property is passed on as is
+    private static String property(String name) {
+        String value = System.getProperty(name, "").trim();
+        return value.startsWith("${") ? "" : value;
+    }
+}
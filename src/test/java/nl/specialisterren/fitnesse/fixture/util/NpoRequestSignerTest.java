@@ -0,0 +1,62 @@
+package nl.specialisterren.fitnesse.fixture.util;
+
+import nl.vpro.api.client.frontend.NpoApiAuthentication;
+import org.junit.Test;
+
+import java.net.URI;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Checks NpoRequestSigner produces the same headers as the API client's NpoApiAuthentication.
+ */
+public class NpoRequestSignerTest {
+    private static final String KEY = "test-key";
+    private static final String SECRET = "test-secret";
+    private static final String ORIGIN = "https://poms.example.com/";
+
+    private final NpoApiAuthentication authentication = new NpoApiAuthentication(KEY, SECRET, ORIGIN);
+    private final NpoRequestSigner signer = new NpoRequestSigner(KEY, SECRET, ORIGIN);
+
+    @Test
+    public void signsUrlWithoutQuery() throws Exception {
+        assertSameHeaders("https://rs.poms.omroep.nl/v1/api/media/POW_04596578");
+    }
+
+    @Test
+    public void signsQueryParametersInSortedOrder() throws Exception {
+        assertSameHeaders("https://rs.poms.omroep.nl/v1/api/media/POW_04596578/members?max=10&offset=0&properties=none");
+        assertSameHeaders("https://rs.poms.omroep.nl/v1/api/media/search?sort=asc&max=5&profile=vpro&offset=20");
+    }
+
+    @Test
+    public void signsEncodedCharacters() throws Exception {
+        assertSameHeaders("https://rs.poms.omroep.nl/v1/api/media/search?q=caf%C3%A9%20au%20lait&max=5");
+        assertSameHeaders("https://rs.poms.omroep.nl/v1/api/media/redirects?from=a%2Cb%3Dc&to=%2Fpath%26more");
+        assertSameHeaders("https://rs.poms.omroep.nl/v1/api/pages/http%3A%2F%2Fwww.vpro.nl%2Fpagina.html");
+    }
+
+    @Test
+    public void ignoresIecomp() throws Exception {
+        assertSameHeaders("https://rs.poms.omroep.nl/v1/api/media/POW_04596578?iecomp=1234567890");
+        assertSameHeaders("https://rs.poms.omroep.nl/v1/api/media/search?max=5&iecomp=1234567890&offset=0");
+    }
+
+    @Test
+    public void signsParametersWithoutValue() throws Exception {
+        assertSameHeaders("https://rs.poms.omroep.nl/v1/api/media/search?properties&max=5");
+    }
+
+    private void assertSameHeaders(String url) throws Exception {
+        Map<String, Object> expected = authentication.authenticate(new URI(url));
+        Map<String, String> actual = new LinkedHashMap<>();
+        signer.sign(url, String.valueOf(expected.get("X-NPO-Date")), actual::put);
+
+        assertEquals(url, expected.size(), actual.size());
+        for (Map.Entry<String, Object> header : expected.entrySet()) {
+            assertEquals(url + " " + header.getKey(), String.valueOf(header.getValue()), actual.get(header.getKey()));
+        }
+    }
+}
@@ -0,0 +1,602 @@
+package nl.specialisterren.fitnesse.junit;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Selects the pages of a suite that are affected by the changes since a git revision, using the dependencies
+ * recorded by {@link WikiDependencyIndexer}.
+ * <p>
+ * The changed lines (of <code>git diff</code>, plus untracked files) are mapped to what they belong to:
+ * </p>
+ * <ul>
+ *     <li>a line in a scenario (or table template) changes that scenario, any other line of a wiki page changes the
+ *     page as a whole</li>
+ *     <li>a line in a method or field of a fixture (or other class in src/main/java) changes that member, any other
+ *     line before the members (the class declaration) changes the class as a whole. Imports are skipped: a
+ *     changed import comes with changes to the members using it. Changed members also change the members
+ *     that use them: members of the same class or its subclasses, and members of other classes that mention both
+ *     the class and the changed member (or just the class, when it changed as a whole). A changed member that overrides a
+ *     method (public or not, hsac's fixtures may call it for any row, e.g. responseIsValid from getFrom), or a
+ *     constructor, changes the class as a whole</li>
+ *     <li>a changed resource changes the members that mention its file name</li>
+ * </ul>
+ * A test page is affected when a page it runs (itself, its ancestors, its SetUp and TearDown pages, the
+ * ScenarioLibrary pages and the pages these include) changed as a whole, when it calls (directly or through other
+ * scenarios) a changed scenario, or when it calls a changed public method of a fixture it uses (or the fixture's class
+ * changed as a whole). A deleted SetUp, TearDown (or suite variant) or ScenarioLibrary page changes all pages below
+ * its parent, other deleted pages change the pages including them. Changes to other files (e.g. the pom) select the
+ * whole suite.
+ * <p>
+ * A page in a suite that depends on the order of its children (see {@link SuiteSharder}) is run together with its
+ * siblings: the whole suite is selected.
+ * </p>
+ */
+public class ChangeImpact {
+    private static final Pattern DIFF_FILE = Pattern.compile("^\\+\\+\\+ (?:b/)?(.+)$");
+    private static final Pattern DIFF_OLD_FILE = Pattern.compile("^--- (?:a/)?(.+)$");
+    private static final Pattern HUNK = Pattern.compile("^@@ -\\d+(?:,\\d+)? \\+(\\d+)(?:,(\\d+))? @@.*");
+    private static final List<String> INHERITED_PAGES = Arrays.asList("SetUp", "TearDown", "SuiteSetUp",
+            "SuiteTearDown");
+    private static final String WHOLE = "*";
+
+    private final WikiDependencyIndexer index;
+    private final SuiteSharder sharder;
+    private final Set<String> changedPages = new TreeSet<>();
+    // directories (ending with '/') whose pages all changed
+    private final Set<String> changedSubtrees = new TreeSet<>();
+    private final Set<String> changedScenarios = new TreeSet<>();
+    // lower case class name, to changed lower case member names (or WHOLE)
+    private final Map<String, Set<String>> changedMembers = new HashMap<>();
+    private final Set<String> changedResources = new TreeSet<>();
+    private final List<String> otherChanges = new ArrayList<>();
+    private final Map<String, String> pageFiles = new HashMap<>();
+
+    /**
+     * @param index up to date index of the project.
+     * @param sharder sharder for the wiki of the project.
+     */
+    public ChangeImpact(WikiDependencyIndexer index, SuiteSharder sharder) {
+        this.index = index;
+        this.sharder = sharder;
+    }
+
+    /**
+     * Reads the changes between a revision and the working tree (including files not yet added).
+     * @param revision git revision to compare with, e.g. origin/master or HEAD~1.
+     */
+    public void readChangesSince(String revision) throws IOException, InterruptedException {
+        readChanges(git("diff", "--no-color", "--no-ext-diff", "--no-renames", "--unified=0", "--relative", revision),
+                git("diff", "--name-only", "--no-renames", "--relative", revision),
+                git("ls-files", "--others", "--exclude-standard"));
+    }
+
+    /**
+     * @param diff output of git diff --unified=0.
+     * @param changedFiles output of git diff --name-only, for the changes without hunks.
+     * @param untrackedFiles output of git ls-files --others.
+     */
+    void readChanges(List<String> diff, List<String> changedFiles, List<String> untrackedFiles) {
+        Set<String> seen = new LinkedHashSet<>();
+        String path = null;
+        String oldPath = null;
+        // file names are in the lines between 'diff --git' and the first hunk (other lines may look like them)
+        boolean header = false;
+        for (String line : diff) {
+            if (line.startsWith("diff --git ")) {
+                header = true;
+                path = null;
+                continue;
+            }
+            Matcher hunk = HUNK.matcher(line);
+            if (hunk.matches()) {
+                header = false;
+                if (path != null) {
+                    seen.add(path);
+                    int start = Integer.parseInt(hunk.group(1));
+                    int count = hunk.group(2) == null ? 1 : Integer.parseInt(hunk.group(2));
+                    // when lines were only removed, those after 'start' are changed
+                    changedLines(path, start, count == 0 ? start + 1 : start + count - 1);
+                }
+            } else if (header) {
+                Matcher oldFile = DIFF_OLD_FILE.matcher(line);
+                Matcher file = DIFF_FILE.matcher(line);
+                if (oldFile.matches()) {
+                    oldPath = oldFile.group(1);
+                } else if (file.matches()) {
+                    path = file.group(1);
+                    if ("/dev/null".equals(path)) {
+                        seen.add(oldPath);
+                        changedFile(oldPath);
+                        path = null;
+                    }
+                }
+            }
+        }
+        // binary files and mode changes have no hunks
+        for (String changed : changedFiles) {
+            if (!seen.contains(changed)) {
+                changedFile(changed);
+            }
+        }
+        for (String untracked : untrackedFiles) {
+            changedFile(untracked);
+        }
+        propagateJavaChanges();
+    }
+
+    private void changedFile(String path) {
+        changedLines(path, 0, Integer.MAX_VALUE);
+    }
+
+    private void changedLines(String path, int start, int end) {
+        if (path.endsWith(".md")) {
+            return;
+        }
+        WikiDependencyIndexer.Entry entry = index.entries().get(path);
+        if (entry == null) {
+            if (path.startsWith("src/main/java/") && path.endsWith(".java")) {
+                // deleted class
+                markMember(path.substring(path.lastIndexOf('/') + 1, path.length() - ".java".length()), WHOLE);
+            } else if (path.startsWith("src/main/resources/")) {
+                changedResources.add(fileName(path));
+            } else if (path.startsWith("wiki/FitNesseRoot/") && path.endsWith(".wiki")) {
+                deletedPage(path);
+            } else {
+                otherChanges.add(path);
+            }
+            return;
+        }
+        switch (entry.kind) {
+            case WIKI:
+                for (int line = start; line <= end; line++) {
+                    WikiDependencyIndexer.Table table = entry.tableAt(line);
+                    if (table == null || table.scenario == null) {
+                        changedPages.add(path);
+                        break;
+                    }
+                    changedScenarios.add(table.scenario);
+                    line = table.end;
+                }
+                break;
+            case JAVA:
+                if (entry.className == null) {
+                    break;
+                }
+                if (end == Integer.MAX_VALUE) {
+                    markMember(entry.className, WHOLE);
+                    break;
+                }
+                for (int line = start; line <= end; line++) {
+                    WikiDependencyIndexer.Member member = entry.memberAt(line);
+                    if (member != null) {
+                        markChangedMember(entry, member);
+                        line = member.end;
+                    } else if (line > entry.importsEnd && line <= lastMemberLine(entry)) {
+                        // class declaration
+                        markMember(entry.className, WHOLE);
+                        break;
+                    }
+                }
+                break;
+            default:
+                changedResources.add(fileName(path));
+        }
+    }
+
+    // a deleted page has no tests left to run, but the pages including it changed, and the pages it was run for
+    private void deletedPage(String path) {
+        String name = path.substring(path.lastIndexOf('/') + 1, path.length() - ".wiki".length());
+        if (INHERITED_PAGES.contains(name) || "ScenarioLibrary".equals(name)) {
+            changedSubtrees.add(path.substring(0, path.lastIndexOf('/') + 1));
+        }
+        for (Map.Entry<String, WikiDependencyIndexer.Entry> file : index.entries().entrySet()) {
+            for (String include : file.getValue().includes) {
+                String target = include.substring(include.lastIndexOf('.') + 1).replaceFirst("^[<>]", "");
+                if (target.equals(name)) {
+                    changedPages.add(file.getKey());
+                }
+            }
+        }
+    }
+
+    private static int lastMemberLine(WikiDependencyIndexer.Entry entry) {
+        int last = 0;
+        for (WikiDependencyIndexer.Member member : entry.members) {
+            last = Math.max(last, member.end);
+        }
+        return last;
+    }
+
+    private static String fileName(String path) {
+        return path.substring(path.lastIndexOf('/') + 1).toLowerCase(Locale.ROOT);
+    }
+
+    private boolean markChangedMember(WikiDependencyIndexer.Entry entry, WikiDependencyIndexer.Member member) {
+        if (member.name.equals(entry.className) || "static".equals(member.name)
+                || member.isOverride) {
+            return markMember(entry.className, WHOLE);
+        }
+        return markMember(entry.className, member.name);
+    }
+
+    private boolean markMember(String className, String member) {
+        Set<String> members = changedMembers.computeIfAbsent(className.toLowerCase(Locale.ROOT),
+                k -> new LinkedHashSet<>());
+        if (members.contains(WHOLE)) {
+            return false;
+        }
+        if (WHOLE.equals(member)) {
+            members.clear();
+        }
+        return members.add(member.toLowerCase(Locale.ROOT));
+    }
+
+    // adds the members that use changed members (or classes, or resources), until nothing is added
+    private void propagateJavaChanges() {
+        Map<String, WikiDependencyIndexer.Entry> classes = classes();
+        boolean added = true;
+        while (added) {
+            added = false;
+            for (WikiDependencyIndexer.Entry entry : classes.values()) {
+                String className = entry.className.toLowerCase(Locale.ROOT);
+                if (changedMembers.getOrDefault(className, Collections.emptySet()).contains(WHOLE)) {
+                    continue;
+                }
+                List<String> supers = superclasses(className, classes);
+                supers.remove(0);
+                for (String superclass : supers) {
+                    if (changedMembers.getOrDefault(superclass, Collections.emptySet()).contains(WHOLE)) {
+                        added |= markMember(entry.className, WHOLE);
+                    }
+                }
+                for (WikiDependencyIndexer.Member member : entry.members) {
+                    if (usesChange(member, className, supers)) {
+                        added |= markChangedMember(entry, member);
+                    }
+                }
+            }
+        }
+    }
+
+    private boolean usesChange(WikiDependencyIndexer.Member member, String className, List<String> supers) {
+        for (String reference : member.references) {
+            if (changedResources.contains(reference)) {
+                return true;
+            }
+            // another class: when it changed as a whole, or a changed member of it is mentioned
+            Set<String> classChanges = changedMembers.get(reference);
+            if (!reference.equals(className) && classChanges != null
+                    && (classChanges.contains(WHOLE) || !Collections.disjoint(classChanges, member.references))) {
+                return true;
+            }
+            if (!reference.equals(member.name.toLowerCase(Locale.ROOT))
+                    && changedMembers.getOrDefault(className, Collections.emptySet()).contains(reference)) {
+                return true;
+            }
+            for (String superclass : supers) {
+                if (changedMembers.getOrDefault(superclass, Collections.emptySet()).contains(reference)) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    private Map<String, WikiDependencyIndexer.Entry> classes() {
+        Map<String, WikiDependencyIndexer.Entry> classes = new HashMap<>();
+        for (WikiDependencyIndexer.Entry entry : index.entries().values()) {
+            if (entry.kind == WikiDependencyIndexer.Kind.JAVA && entry.className != null) {
+                classes.put(entry.className.toLowerCase(Locale.ROOT), entry);
+            }
+        }
+        return classes;
+    }
+
+    // the class itself, followed by its superclasses that are in the project
+    private static List<String> superclasses(String className, Map<String, WikiDependencyIndexer.Entry> classes) {
+        List<String> chain = new ArrayList<>();
+        String current = className;
+        while (current != null && !chain.contains(current)) {
+            chain.add(current);
+            WikiDependencyIndexer.Entry entry = classes.get(current);
+            current = entry == null || entry.superclass == null ? null : entry.superclass.toLowerCase(Locale.ROOT);
+        }
+        return chain;
+    }
+
+    /**
+     * @return whether there are changes that cannot be traced to pages, so the whole suite must run.
+     */
+    public boolean requiresFullRun() {
+        return !otherChanges.isEmpty();
+    }
+
+    /**
+     * Creates a run plan containing only the affected pages of a suite, all in one stage (each page runs as a suite of
+     * its own, so its SetUp and TearDown pages apply). When changes cannot be traced to pages the plan of the
+     * whole suite is returned.
+     * @param suite full name of the suite.
+     * @param depth number of levels the suite may be split, for a full run.
+     * @return stages to run one after the other, empty when no page is affected.
+     */
+    public List<List<String>> plan(String suite, int depth) {
+        if (requiresFullRun()) {
+            System.out.println("Running all of " + suite + ", changed: " + otherChanges);
+            return sharder.plan(suite, depth);
+        }
+        List<String> affected = affectedPages(suite);
+        List<List<String>> stages = new ArrayList<>();
+        if (!affected.isEmpty()) {
+            stages.add(affected);
+        }
+        return stages;
+    }
+
+    /**
+     * @param suite full name of the suite.
+     * @return the affected test pages, or (for pages in suites depending on the order of their children) suites.
+     */
+    public List<String> affectedPages(String suite) {
+        Map<String, WikiDependencyIndexer.Entry> classes = classes();
+        Set<String> selected = new LinkedHashSet<>();
+        for (String page : sharder.testPages(suite)) {
+            if (isAffected(page, classes)) {
+                selected.add(runUnit(suite, page));
+            }
+        }
+        // a suite that is selected already runs the pages in it
+        List<String> result = new ArrayList<>();
+        for (String page : selected) {
+            if (!containedIn(page, selected)) {
+                result.add(page);
+            }
+        }
+        return result;
+    }
+
+    private static boolean containedIn(String page, Set<String> pages) {
+        for (String other : pages) {
+            if (page.startsWith(other + ".")) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private String runUnit(String suite, String page) {
+        String current = page;
+        String unit = page;
+        while (current.length() > suite.length() && current.contains(".")) {
+            current = current.substring(0, current.lastIndexOf('.'));
+            if (current.length() >= suite.length() && sharder.hasOrderingPages(current)) {
+                unit = current;
+            }
+        }
+        return unit;
+    }
+
+    private boolean isAffected(String page, Map<String, WikiDependencyIndexer.Entry> classes) {
+        Set<String> files = new LinkedHashSet<>();
+        addRunPages(page, files);
+        for (String file : files) {
+            if (changedPages.contains(file)) {
+                return true;
+            }
+        }
+        String pageFile = pageFile(page);
+        for (String subtree : changedSubtrees) {
+            if (pageFile != null && pageFile.startsWith(subtree)) {
+                return true;
+            }
+        }
+
+        Set<String> calls = new LinkedHashSet<>();
+        Set<String> fixtures = new LinkedHashSet<>();
+        Map<String, Set<String>> scenarios = new LinkedHashMap<>();
+        for (String file : files) {
+            WikiDependencyIndexer.Entry entry = index.entries().get(file);
+            if (entry == null) {
+                continue;
+            }
+            for (WikiDependencyIndexer.Table table : entry.tables) {
+                fixtures.addAll(table.fixtures);
+                if (table.scenario == null) {
+                    calls.addAll(table.calls);
+                } else {
+                    scenarios.computeIfAbsent(table.scenario, k -> new LinkedHashSet<>()).addAll(table.calls);
+                }
+            }
+        }
+        addScenarioCalls(calls, scenarios);
+        for (String scenario : changedScenarios) {
+            if (isCalled(scenario, calls)) {
+                return true;
+            }
+        }
+        for (String fixture : fixtures) {
+            for (String className : superclasses(fixture, classes)) {
+                Set<String> members = changedMembers.getOrDefault(className, Collections.emptySet());
+                if (members.contains(WHOLE)) {
+                    return true;
+                }
+                for (String member : members) {
+                    if (isCalled(member, calls)) {
+                        return true;
+                    }
+                }
+            }
+        }
+        return false;
+    }
+
+    // adds the calls made by the scenarios that are called, and by the scenarios these call
+    private static void addScenarioCalls(Set<String> calls, Map<String, Set<String>> scenarios) {
+        Set<String> expanded = new LinkedHashSet<>();
+        List<String> todo = new ArrayList<>(calls);
+        while (!todo.isEmpty()) {
+            String call = todo.remove(todo.size() - 1);
+            for (Map.Entry<String, Set<String>> scenario : scenarios.entrySet()) {
+                if (!expanded.contains(scenario.getKey()) && matches(call, scenario.getKey())) {
+                    expanded.add(scenario.getKey());
+                    for (String nested : scenario.getValue()) {
+                        if (calls.add(nested)) {
+                            todo.add(nested);
+                        }
+                    }
+                }
+            }
+        }
+    }
+
+    private static boolean isCalled(String name, Set<String> calls) {
+        for (String call : calls) {
+            if (matches(call, name)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    // a call may contain '*' for a wiki variable (of unknown value)
+    private static boolean matches(String call, String name) {
+        if (!call.contains("*")) {
+            return call.equals(name);
+        }
+        StringBuilder regex = new StringBuilder();
+        for (String part : call.split("\\*", -1)) {
+            if (regex.length() > 0) {
+                regex.append(".*");
+            }
+            regex.append(Pattern.quote(part));
+        }
+        return name.matches(regex.toString());
+    }
+
+    /**
+     * Adds the files of the pages that run as part of a test page: the page, its ancestors (defining its variables),
+     * the nearest SetUp, TearDown, SuiteSetUp and SuiteTearDown, the ScenarioLibrary pages of its ancestors, and
+     * (recursively) the pages they include.
+     */
+    private void addRunPages(String page, Set<String> files) {
+        List<String> ancestors = new ArrayList<>();
+        for (String current = page; current.contains("."); ) {
+            current = current.substring(0, current.lastIndexOf('.'));
+            ancestors.add(current);
+        }
+        for (String ancestor : ancestors) {
+            addPage(ancestor, files);
+            addPage(ancestor + ".ScenarioLibrary", files);
+        }
+        for (String inherited : INHERITED_PAGES) {
+            for (String ancestor : ancestors) {
+                if (addPage(ancestor + "." + inherited, files)) {
+                    break;
+                }
+            }
+        }
+        addPage(page, files);
+    }
+
+    private boolean addPage(String page, Set<String> files) {
+        String file = pageFile(page);
+        if (file == null) {
+            return false;
+        }
+        if (files.add(file)) {
+            WikiDependencyIndexer.Entry entry = index.entries().get(file);
+            if (entry != null) {
+                for (String include : entry.includes) {
+                    String included = resolveInclude(include, page);
+                    if (included != null) {
+                        addPage(included, files);
+                    }
+                }
+            }
+        }
+        return true;
+    }
+
+    // like FitNesse: '.' from the root, '>' a child, '<' a child of an ancestor, otherwise a sibling
+    private String resolveInclude(String reference, String from) {
+        String parent = from.contains(".") ? from.substring(0, from.lastIndexOf('.')) : "";
+        if (reference.startsWith(".")) {
+            return reference.substring(1);
+        }
+        if (reference.startsWith(">")) {
+            return from + "." + reference.substring(1);
+        }
+        if (reference.startsWith("<")) {
+            String name = reference.substring(1);
+            for (String ancestor = parent; !ancestor.isEmpty(); ) {
+                String candidate = ancestor + "." + name;
+                if (pageFile(candidate) != null) {
+                    return candidate;
+                }
+                ancestor = ancestor.contains(".") ? ancestor.substring(0, ancestor.lastIndexOf('.')) : "";
+            }
+            return pageFile(name) != null ? name : null;
+        }
+        return parent.isEmpty() ? reference : parent + "." + reference;
+    }
+
+    // path of the page's file relative to the project (as in the index), null if there is no such page file
+    private String pageFile(String page) {
+        if (!pageFiles.containsKey(page)) {
+            File file = sharder.pageFile(page);
+            String path = null;
+            if (file != null && file.isFile()) {
+                path = index.getProjectDir().getAbsoluteFile().toPath().normalize()
+                        .relativize(file.getAbsoluteFile().toPath().normalize()).toString()
+                        .replace(File.separatorChar, '/');
+            }
+            pageFiles.put(page, path);
+        }
+        return pageFiles.get(page);
+    }
+
+    @Override
+    public String toString() {
+        return "changed pages: " + changedPages + ", page trees: " + changedSubtrees + ", scenarios: "
+                + changedScenarios + ", fixture members: " + changedMembers + ", resources: " + changedResources
+                + ", other files: " + otherChanges;
+    }
+
+    private List<String> git(String... arguments) throws IOException, InterruptedException {
+        List<String> command = new ArrayList<>();
+        command.add("git");
+        command.addAll(Arrays.asList(arguments));
+        Process process = new ProcessBuilder(command)
+                .directory(index.getProjectDir())
+                .redirectError(ProcessBuilder.Redirect.INHERIT)
+                .start();
+        List<String> lines = new ArrayList<>();
+        try (BufferedReader reader = new BufferedReader(
+                new InputStreamReader(process.getInputStream(), StandardCharsets.UTF_8))) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                lines.add(line);
+            }
+        }
+        if (process.waitFor() != 0) {
+            throw new IllegalStateException("Unable to run " + command);
+        }
+        return lines;
+    }
+}
@@ -0,0 +1,232 @@
+package nl.specialisterren.fitnesse.junit;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Checks which pages ChangeImpact selects for changes to scenarios, pages and fixtures of a small project.
+ */
+public class ChangeImpactTest {
+    private static final String LIBRARY = "wiki/FitNesseRoot/Shop/ScenarioLibrary.wiki";
+    private static final String HELPER = "src/main/java/shop/Helper.java";
+    private static final String SHOP_FIXTURE = "src/main/java/shop/ShopFixture.java";
+    private static final String BASE_FIXTURE = "src/main/java/shop/BaseFixture.java";
+
+    private File project;
+
+    @Before
+    public void createProject() throws IOException {
+        project = Files.createTempDirectory("change-impact").toFile();
+        write("wiki/FitNesseRoot/Shop.wiki", "---", "Suite", "---");
+        write(LIBRARY,
+                "|scenario|open page|url|",
+                "|navigate to|@url|",
+                "",
+                "|scenario|log in|",
+                "|open page|login|",
+                "|click|login button|",
+                "",
+                "|scenario|search for|term|",
+                "|enter|@term|as|query|");
+        write("wiki/FitNesseRoot/Shop/LoginTest.wiki", "---", "Test", "---",
+                "|script|shop fixture|",
+                "|log in|",
+                "|check|basket size|0|");
+        write("wiki/FitNesseRoot/Shop/SearchTest.wiki", "---", "Test", "---",
+                "|script|shop fixture|",
+                "|search for|shoes|");
+        write("wiki/FitNesseRoot/Shop/PingTest.wiki", "---", "Test", "---",
+                "|script|ping fixture|",
+                "|ensure|ping|");
+        write("wiki/FitNesseRoot/Shop/Checkout.wiki", "---", "Suite", "---");
+        write("wiki/FitNesseRoot/Shop/Checkout/PayTest.wiki", "---", "Test", "---",
+                "|script|ping fixture|",
+                "|ensure|ping|");
+        write(BASE_FIXTURE,
+                "package shop;",
+                "",
+                "public class BaseFixture {",
+                "    protected String name() {",
+                "        return \"base\";",
+                "    }",
+                "}");
+        write(SHOP_FIXTURE,
+                "package shop;",
+                "",
+                "public class ShopFixture extends BaseFixture {",
+                "    private int size;",
+                "",
+                "    public int basketSize() {",
+                "        return count();",
+                "    }",
+                "",
+                "    @Override",
+                "    public String toString() {",
+                "        return \"shop\";",
+                "    }",
+                "",
+                "    private int count() {",
+                "        return size;",
+                "    }",
+                "}");
+        write("src/main/java/shop/PingFixture.java",
+                "package shop;",
+                "",
+                "public class PingFixture {",
+                "    public boolean ping() {",
+                "        return Helper.reachable();",
+                "    }",
+                "}");
+        write(HELPER,
+                "package shop;",
+                "",
+                "public class Helper {",
+                "    public static boolean reachable() {",
+                "        return true;",
+                "    }",
+                "",
+                "    public static String unused() {",
+                "        return \"\";",
+                "    }",
+                "}");
+    }
+
+    @After
+    public void deleteProject() throws IOException {
+        delete(project);
+    }
+
+    @Test
+    public void changedScenarioSelectsPagesCallingIt() throws IOException {
+        assertAffected(changedLines(LIBRARY, line(LIBRARY, "|enter|@term|as|query|"), 1), "Shop.SearchTest");
+    }
+
+    @Test
+    public void changedScenarioSelectsPagesCallingItThroughOtherScenarios() throws IOException {
+        assertAffected(changedLines(LIBRARY, line(LIBRARY, "|navigate to|@url|"), 1), "Shop.LoginTest");
+    }
+
+    @Test
+    public void removedLinesChangeTheScenarioTheyWereIn() throws IOException {
+        // lines removed after the first row of 'log in'
+        assertAffected(changedLines(LIBRARY, line(LIBRARY, "|open page|login|"), 0), "Shop.LoginTest");
+    }
+
+    @Test
+    public void changeOutsideScenariosChangesPageAsAWhole() throws IOException {
+        assertAffected(changedLines(LIBRARY, line(LIBRARY, "|scenario|log in|") - 1, 1),
+                "Shop.LoginTest", "Shop.PingTest", "Shop.SearchTest", "Shop.Checkout.PayTest");
+    }
+
+    @Test
+    public void changedMethodSelectsPagesCallingMethodsUsingIt() throws IOException {
+        assertAffected(changedLines(HELPER, line(HELPER, "return true;"), 1), "Shop.PingTest", "Shop.Checkout.PayTest");
+    }
+
+    @Test
+    public void changedPrivateMethodSelectsPagesCallingPublicMethodsUsingIt() throws IOException {
+        assertAffected(changedLines(SHOP_FIXTURE, line(SHOP_FIXTURE, "return size;"), 1), "Shop.LoginTest");
+    }
+
+    @Test
+    public void changedPublicOverrideSelectsPagesUsingTheClass() throws IOException {
+        assertAffected(changedLines(SHOP_FIXTURE, line(SHOP_FIXTURE, "return \"shop\";"), 1),
+                "Shop.LoginTest", "Shop.SearchTest");
+    }
+
+    @Test
+    public void unusedMethodSelectsNothing() throws IOException {
+        assertAffected(changedLines(HELPER, line(HELPER, "return \"\";"), 1));
+    }
+
+    @Test
+    public void changedSuperclassDeclarationSelectsPagesUsingSubclasses() throws IOException {
+        assertAffected(changedLines(BASE_FIXTURE, line(BASE_FIXTURE, "public class BaseFixture {"), 1),
+                "Shop.LoginTest", "Shop.SearchTest");
+    }
+
+    @Test
+    public void deletedSetUpSelectsPagesBelowItsParent() throws IOException {
+        assertAffected(deleted("wiki/FitNesseRoot/Shop/Checkout/SetUp.wiki"), "Shop.Checkout.PayTest");
+    }
+
+    @Test
+    public void deletedScenarioLibrarySelectsPagesBelowItsParent() throws IOException {
+        assertAffected(deleted("wiki/FitNesseRoot/Shop/Checkout/ScenarioLibrary.wiki"), "Shop.Checkout.PayTest");
+    }
+
+    @Test
+    public void deletedTestPageSelectsNothing() throws IOException {
+        assertAffected(deleted("wiki/FitNesseRoot/Shop/OldTest.wiki"));
+    }
+
+    private void assertAffected(List<String> diff, String... expected) throws IOException {
+        WikiDependencyIndexer index = new WikiDependencyIndexer(project, new File(project, "target/index"));
+        index.update();
+        ChangeImpact impact = new ChangeImpact(index,
+                new SuiteSharder(new File(project, "wiki/FitNesseRoot"), false));
+        impact.readChanges(diff, Collections.emptyList(), Collections.emptyList());
+        List<String> affected = new ArrayList<>(impact.affectedPages("Shop"));
+        Collections.sort(affected);
+        List<String> expectedPages = new ArrayList<>(Arrays.asList(expected));
+        Collections.sort(expectedPages);
+        assertEquals(impact.toString(), expectedPages, affected);
+    }
+
+    // a hunk of git diff --unified=0 changing (or, with count 0, removing lines after) start
+    private static List<String> changedLines(String path, int start, int count) {
+        return Arrays.asList("diff --git a/" + path + " b/" + path,
+                "--- a/" + path,
+                "+++ b/" + path,
+                "@@ -" + start + " +" + start + (count == 1 ? "" : "," + count) + " @@",
+                "+changed");
+    }
+
+    private static List<String> deleted(String path) {
+        return Arrays.asList("diff --git a/" + path + " b/" + path,
+                "deleted file mode 100644",
+                "--- a/" + path,
+                "+++ /dev/null",
+                "@@ -1,2 +0,0 @@",
+                "-|script|ping fixture|",
+                "-|ensure|ping|");
+    }
+
+    private int line(String path, String text) throws IOException {
+        List<String> lines = Files.readAllLines(new File(project, path).toPath(), StandardCharsets.UTF_8);
+        for (int i = 0; i < lines.size(); i++) {
+            if (lines.get(i).contains(text)) {
+                return i + 1;
+            }
+        }
+        throw new IllegalArgumentException(text + " not in " + path);
+    }
+
+    private void write(String path, String... lines) throws IOException {
+        File file = new File(project, path);
+        file.getParentFile().mkdirs();
+        Files.write(file.toPath(), Arrays.asList(lines), StandardCharsets.UTF_8);
+    }
+
+    private static void delete(File file) throws IOException {
+        File[] children = file.listFiles();
+        if (children != null) {
+            for (File child : children) {
+                delete(child);
+            }
+        }
+        Files.deleteIfExists(file.toPath());
+    }
+}
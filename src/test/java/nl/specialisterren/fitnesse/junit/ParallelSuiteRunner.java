@@ -0,0 +1,281 @@
+package nl.specialisterren.fitnesse.junit;
+
+import nl.specialisterren.fitnesse.fixture.util.VariableStore;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Runs the shards of a plan created by {@link SuiteSharder}, each in its own worker JVM (see {@link ShardWorker}),
+ * and merges their HTML reports into one index.
+ * Each worker writes its HTML results to target/fitnesse-results/&lt;shard&gt; and its output to
+ * target/fitnesse-shards/&lt;shard&gt;.log. Workers get the system properties of this JVM whose names start with one of
+ * {@link #FORWARDED_PROPERTIES} (e.g. the selenium settings), plus the JVM arguments in system property
+ * fitnesseShardJvmArgs.
+ * <p>
+ * {@link #runForBrowsers(Map)} runs the plans of several browsers through the same workers, so one run covers the
+ * browser matrix. Each browser's shards write their results to target/fitnesse-results/&lt;browser&gt;/&lt;shard&gt; and
+ * use their own variable store (run id suffixed with the browser), so pages of different browsers that store the
+ * same variable do not interfere. Within a store each shard keeps its own variables (see VariableStore). Search
+ * context and tabs are isolated as each shard has its own JVM and browser.
+ * When headless, Chrome is started by hsac's runner using seleniumBrowser and seleniumJsonProfile, and Firefox gets
+ * MOZ_HEADLESS in its environment. Remote (grid) browsers are left as configured.
+ * </p>
+ */
+public class ParallelSuiteRunner {
+    public static final List<String> FORWARDED_PROPERTIES = Arrays.asList("fitnesse", "selenium", "suiteFilter",
+            "excludeSuiteFilter", "httpPool.", "regexCacheSize", "http.", "https.", "variableStore.",
+            "httpRecording.", "httpMetrics.", "pagePerformance.");
+    private static final String RESULTS_ROOT = "target/fitnesse-results";
+    private static final String LOG_ROOT = "target/fitnesse-shards";
+
+    private static final String HEADLESS_CHROME_PROFILE =
+            "{\"args\":[\"headless\",\"disable-gpu\",\"window-size=1366,768\"]}";
+
+    private final int workers;
+    private boolean headless = false;
+
+    public ParallelSuiteRunner(int workers) {
+        this.workers = workers;
+    }
+
+    public void setHeadless(boolean headless) {
+        this.headless = headless;
+    }
+
+    // a shard, the stage it runs in, and the browser it must use (null to leave that to the wiki)
+    private static final class Task {
+        private final String shard;
+        private final int stage;
+        private final String browser;
+
+        private Task(String shard, int stage, String browser) {
+            this.shard = shard;
+            this.stage = stage;
+            this.browser = browser;
+        }
+    }
+
+    /**
+     * Outcome of running one shard.
+     */
+    public static class ShardResult {
+        private final String shard;
+        private final int exitCode;
+        private final long millis;
+        private final File log;
+
+        ShardResult(String shard, int exitCode, long millis, File log) {
+            this.shard = shard;
+            this.exitCode = exitCode;
+            this.millis = millis;
+            this.log = log;
+        }
+
+        public String getShard() {
+            return shard;
+        }
+
+        public boolean isSuccess() {
+            return exitCode == 0;
+        }
+
+        public long getMillis() {
+            return millis;
+        }
+
+        public File getLog() {
+            return log;
+        }
+
+        @Override
+        public String toString() {
+            return shard + (isSuccess() ? " passed" : " FAILED") + " in " + millis + " ms (log: " + log + ")";
+        }
+    }
+
+    /**
+     * Runs a plan. Stages run one after the other (also when shards of an earlier stage failed, so tear downs run),
+     * shards within a stage run in parallel using at most the configured number of workers.
+     * @param stages plan to run.
+     * @return result per shard.
+     */
+    public List<ShardResult> run(List<List<String>> stages) throws InterruptedException {
+        List<List<Task>> tasks = new ArrayList<>();
+        for (int i = 0; i < stages.size(); i++) {
+            List<Task> stageTasks = new ArrayList<>();
+            for (String shard : stages.get(i)) {
+                stageTasks.add(new Task(shard, i, null));
+            }
+            tasks.add(stageTasks);
+        }
+        return runTasks(tasks);
+    }
+
+    /**
+     * Runs a plan per browser. Stage n of all browsers runs together, so the shards of all browsers share the
+     * workers (a work queue of mixed Firefox and Chrome sessions), while each browser's stages stay in order.
+     * @param plans plan per browser, keyed by the browser's name (e.g. Firefox or Chrome).
+     * @return result per shard.
+     */
+    public List<ShardResult> runForBrowsers(Map<String, List<List<String>>> plans) throws InterruptedException {
+        List<List<Task>> tasks = new ArrayList<>();
+        for (Map.Entry<String, List<List<String>>> plan : plans.entrySet()) {
+            List<List<String>> stages = plan.getValue();
+            for (int i = 0; i < stages.size(); i++) {
+                if (tasks.size() <= i) {
+                    tasks.add(new ArrayList<>());
+                }
+                for (String shard : stages.get(i)) {
+                    tasks.get(i).add(new Task(shard, i, plan.getKey()));
+                }
+            }
+        }
+        return runTasks(tasks);
+    }
+
+    private List<ShardResult> runTasks(List<List<Task>> stages) throws InterruptedException {
+        List<ShardResult> results = new ArrayList<>();
+        ExecutorService executor = Executors.newFixedThreadPool(workers);
+        try {
+            for (List<Task> stage : stages) {
+                List<Future<ShardResult>> futures = new ArrayList<>();
+                for (Task task : stage) {
+                    futures.add(executor.submit(() -> runShard(task)));
+                }
+                for (Future<ShardResult> future : futures) {
+                    try {
+                        results.add(future.get());
+                    } catch (ExecutionException e) {
+                        throw new IllegalStateException("Unable to run shard", e.getCause());
+                    }
+                }
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+        return results;
+    }
+
+    /**
+     * Creates the overview page (target/fitnesse-results/index.html) linking the reports of all shards.
+     */
+    public void mergeReports() throws IOException, InterruptedException {
+        mergeReportsIn(RESULTS_ROOT);
+    }
+
+    /**
+     * Creates the overview page of the shards of one browser run by {@link #runForBrowsers(Map)}
+     * (target/fitnesse-results/&lt;browser&gt;/index.html).
+     */
+    public void mergeReports(String browser) throws IOException, InterruptedException {
+        mergeReportsIn(RESULTS_ROOT + "/" + browser);
+    }
+
+    private void mergeReportsIn(String directory) throws IOException, InterruptedException {
+        List<String> command = javaCommand();
+        command.add("nl.hsac.fitnesse.junit.reportmerge.HtmlReportIndexGenerator");
+        command.add(directory);
+        Process process = new ProcessBuilder(command).inheritIO().start();
+        if (process.waitFor() != 0) {
+            throw new IllegalStateException("Unable to merge reports in " + directory);
+        }
+    }
+
+    private ShardResult runShard(Task task) throws IOException, InterruptedException {
+        String shard = task.shard;
+        File log = new File(LOG_ROOT, shard + ".log");
+        log.getParentFile().mkdirs();
+        List<String> command = javaCommand();
+        Map<String, String> properties = new LinkedHashMap<>();
+        for (Map.Entry<Object, Object> property : System.getProperties().entrySet()) {
+            String name = property.getKey().toString();
+            if (isForwarded(name) && !isShardSpecific(name)) {
+                properties.put(name, property.getValue().toString());
+            }
+        }
+        properties.put("fitnesseSuiteToRun", shard);
+        // the shard's variables are kept apart from those of shards running at the same time
+        properties.put("fitnesseShard", shard);
+        properties.put("fitnesseShardStage", String.valueOf(task.stage));
+        String resultsDir = task.browser == null ? RESULTS_ROOT : RESULTS_ROOT + "/" + task.browser;
+        properties.put("fitnesseResultsDir", resultsDir + "/" + shard);
+        Map<String, String> environment = new LinkedHashMap<>();
+        if (task.browser != null) {
+            properties.put("fitnesseRunId", VariableStore.runId() + "-" + task.browser);
+            if (headless) {
+                configureHeadless(task.browser.toLowerCase(Locale.ROOT), properties, environment);
+            }
+        }
+        for (Map.Entry<String, String> property : properties.entrySet()) {
+            command.add("-D" + property.getKey() + "=" + property.getValue());
+        }
+        command.add(ShardWorker.class.getName());
+
+        long start = System.currentTimeMillis();
+        System.out.println("Starting shard: " + shard);
+        ProcessBuilder builder = new ProcessBuilder(command);
+        builder.environment().putAll(environment);
+        Process process = builder
+                .redirectErrorStream(true)
+                .redirectOutput(log)
+                .start();
+        ShardResult result = new ShardResult(shard, process.waitFor(), System.currentTimeMillis() - start, log);
+        System.out.println(result);
+        return result;
+    }
+
+    private static void configureHeadless(String browser, Map<String, String> properties,
+                                          Map<String, String> environment) {
+        String gridUrl = properties.get("seleniumGridUrl");
+        if (gridUrl != null && !gridUrl.isEmpty() && !gridUrl.startsWith("${")) {
+            return;
+        }
+        if ("chrome".equals(browser)) {
+            properties.put("seleniumBrowser", browser);
+            properties.put("seleniumJsonProfile", HEADLESS_CHROME_PROFILE);
+        } else if ("firefox".equals(browser)) {
+            environment.put("MOZ_HEADLESS", "1");
+            environment.put("MOZ_HEADLESS_WIDTH", "1366");
+            environment.put("MOZ_HEADLESS_HEIGHT", "768");
+        }
+    }
+
+    private static List<String> javaCommand() {
+        List<String> command = new ArrayList<>();
+        command.add(new File(System.getProperty("java.home"), "bin/java").getPath());
+        String jvmArgs = System.getProperty("fitnesseShardJvmArgs", "").trim();
+        // an unset maven property is passed on as is
+        if (!jvmArgs.isEmpty() && !jvmArgs.startsWith("${")) {
+            command.addAll(Arrays.asList(jvmArgs.split("\\s+")));
+        }
+        command.add("-cp");
+        command.add(System.getProperty("java.class.path"));
+        return command;
+    }
+
+    private static boolean isForwarded(String name) {
+        for (String prefix : FORWARDED_PROPERTIES) {
+            if (name.startsWith(prefix)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static boolean isShardSpecific(String name) {
+        return "fitnesseSuiteToRun".equals(name) || "fitnesseResultsDir".equals(name)
+                || "fitnesseShardJvmArgs".equals(name) || "fitnesseShard".equals(name)
+                || "fitnesseShardStage".equals(name);
+    }
+}
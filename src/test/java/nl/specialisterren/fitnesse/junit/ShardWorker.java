@@ -0,0 +1,26 @@
+package nl.specialisterren.fitnesse.junit;
+
+import nl.hsac.fitnesse.example.FixtureDebugTest;
+import org.junit.runner.JUnitCore;
+import org.junit.runner.Result;
+import org.junit.runner.notification.RunListener;
+
+/**
+ * Entry point of a worker JVM started by {@link ParallelSuiteRunner}: runs FixtureDebugTest (for the shard set in
+ * system property fitnesseSuiteToRun) with the same JUnit listeners failsafe uses, so per page reports are created.
+ * The listeners are configured, comma separated, in system property fitnesseShardListeners.
+ */
+public class ShardWorker {
+    public static void main(String[] args) throws ReflectiveOperationException {
+        JUnitCore core = new JUnitCore();
+        for (String listener : System.getProperty("fitnesseShardListeners", "").split(",")) {
+            if (!listener.trim().isEmpty()) {
+                core.addListener((RunListener) Class.forName(listener.trim()).getDeclaredConstructor().newInstance());
+            }
+        }
+        Result result = core.run(FixtureDebugTest.class);
+        System.out.println("Shard " + System.getProperty("fitnesseSuiteToRun") + ": " + result.getRunCount()
+                + " pages, " + result.getFailureCount() + " failed, " + result.getRunTime() + " ms");
+        System.exit(result.wasSuccessful() ? 0 : 1);
+    }
+}
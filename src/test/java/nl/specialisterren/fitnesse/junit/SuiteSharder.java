@@ -0,0 +1,315 @@
+package nl.specialisterren.fitnesse.junit;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Splits a FitNesse suite into shards that can run in parallel, by reading the wiki's page files.
+ * A suite is split at its sub-suite (and test page) boundaries, up to a maximum depth. Each shard is run as a
+ * suite of its own, so the SetUp, TearDown, SuiteSetUp and SuiteTearDown pages of its ancestors still apply.
+ * <p>
+ * Suites that contain ordering pages (like <code>1_SetUp</code> and <code>_TearDown</code> in
+ * <code>TestScripts.Api.Backend.Media</code>) depend on the order of their children. Those are either kept whole,
+ * or, in phased mode, split into stages: the pages sorting before the first regular child run first, then the
+ * regular children in parallel, then the pages starting with '_'. Stages run one after the other.
+ * </p>
+ * Symbolic links (as used by the <code>Omgevingen</code> pages) are followed, while the shard names keep the linked
+ * path so the variables defined on the environment page still apply.
+ */
+public class SuiteSharder {
+    private static final List<String> SPECIAL_PAGES = Arrays.asList("SetUp", "TearDown", "SuiteSetUp", "SuiteTearDown",
+            "ScenarioLibrary", "TemplateLibrary", "PageHeader", "PageFooter");
+    private static final Pattern LINK = Pattern.compile("^\\s+(\\w+):\\s*(\\S+)\\s*$");
+
+    private final File root;
+    private final boolean phased;
+
+    /**
+     * @param root directory containing the wiki's pages (i.e. FitNesseRoot).
+     * @param phased whether suites with ordering pages are split into stages, instead of kept whole.
+     */
+    public SuiteSharder(File root, boolean phased) {
+        this.root = root;
+        this.phased = phased;
+    }
+
+    /**
+     * Creates a run plan for a suite.
+     * @param suite full name of the suite (e.g. NpoPoms.Omgevingen.Test.Api).
+     * @param depth number of levels the suite may be split.
+     * @return stages to run one after the other, each containing the names of the pages that may run in parallel.
+     */
+    public List<List<String>> plan(String suite, int depth) {
+        Page page = resolve(suite);
+        if (page == null) {
+            throw new IllegalArgumentException("Unable to find page: " + suite + " in " + root);
+        }
+        return plan(page, depth);
+    }
+
+    private List<List<String>> plan(Page page, int depth) {
+        if (depth <= 0 || !page.properties.containsKey("Suite")) {
+            return single(page.name);
+        }
+        List<Page> children = page.children();
+        if (children.isEmpty()) {
+            return single(page.name);
+        }
+        List<Page> before = new ArrayList<>();
+        List<Page> regular = new ArrayList<>();
+        List<Page> after = new ArrayList<>();
+        for (Page child : children) {
+            String simpleName = child.simpleName();
+            if (simpleName.startsWith("_")) {
+                after.add(child);
+            } else if (Character.isDigit(simpleName.charAt(0))) {
+                before.add(child);
+            } else {
+                regular.add(child);
+            }
+        }
+        if (!phased && (!before.isEmpty() || !after.isEmpty())) {
+            return single(page.name);
+        }
+        List<List<String>> stages = new ArrayList<>();
+        for (Page child : before) {
+            stages.add(Collections.singletonList(child.name));
+        }
+        List<List<String>> parallel = new ArrayList<>();
+        for (Page child : regular) {
+            merge(parallel, plan(child, depth - 1));
+        }
+        stages.addAll(parallel);
+        for (Page child : after) {
+            stages.add(Collections.singletonList(child.name));
+        }
+        return stages;
+    }
+
+    /**
+     * @param suite full name of a suite (or test page).
+     * @return full names of all test pages in the suite (the page itself when it is a test page).
+     */
+    List<String> testPages(String suite) {
+        Page page = resolve(suite);
+        if (page == null) {
+            throw new IllegalArgumentException("Unable to find page: " + suite + " in " + root);
+        }
+        List<String> pages = new ArrayList<>();
+        addTestPages(page, pages);
+        return pages;
+    }
+
+    private void addTestPages(Page page, List<String> pages) {
+        if (page.properties.containsKey("Test")) {
+            pages.add(page.name);
+        }
+        if (page.properties.containsKey("Suite")) {
+            for (Page child : page.children()) {
+                addTestPages(child, pages);
+            }
+        }
+    }
+
+    /**
+     * @param fullName full name of a page, which may pass symbolic links.
+     * @return page file (the .wiki file, which need not exist when the page only has children), null if there is
+     * no such page.
+     */
+    File pageFile(String fullName) {
+        Page page = resolve(fullName);
+        if (page == null || page.name.isEmpty()) {
+            return null;
+        }
+        return new File(page.dir.getParentFile(), page.dir.getName() + ".wiki");
+    }
+
+    /**
+     * @param suite full name of a suite.
+     * @return whether the suite has children (like 1_SetUp or _TearDown) that depend on the order of its children.
+     */
+    boolean hasOrderingPages(String suite) {
+        Page page = resolve(suite);
+        if (page == null) {
+            return false;
+        }
+        for (Page child : page.children()) {
+            String simpleName = child.simpleName();
+            if (simpleName.startsWith("_") || Character.isDigit(simpleName.charAt(0))) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static List<List<String>> single(String name) {
+        List<List<String>> stages = new ArrayList<>();
+        stages.add(Collections.singletonList(name));
+        return stages;
+    }
+
+    // stage i of a child's plan runs in parallel with stage i of its siblings' plans
+    private static void merge(List<List<String>> target, List<List<String>> plan) {
+        for (int i = 0; i < plan.size(); i++) {
+            if (target.size() <= i) {
+                target.add(new ArrayList<>());
+            }
+            target.get(i).addAll(plan.get(i));
+        }
+    }
+
+    private Page resolve(String fullName) {
+        Page page = new Page("", root, Collections.singletonMap("Suite", ""));
+        for (String part : fullName.split("\\.")) {
+            page = page.child(part);
+            if (page == null) {
+                return null;
+            }
+        }
+        return page;
+    }
+
+    private Page resolveLink(String target, Page from) {
+        if (target.startsWith(".")) {
+            return resolve(target.substring(1));
+        }
+        if (target.startsWith(">")) {
+            return from.child(target.substring(1));
+        }
+        // relative to parent page, like FitNesse does
+        String parentName = from.name.contains(".") ? from.name.substring(0, from.name.lastIndexOf('.')) : "";
+        return resolve(parentName.isEmpty() ? target : parentName + "." + target);
+    }
+
+    private final class Page {
+        private final String name;
+        private final File dir;
+        private final Map<String, String> properties;
+
+        private Page(String name, File dir, Map<String, String> properties) {
+            this.name = name;
+            this.dir = dir;
+            this.properties = properties;
+        }
+
+        private String simpleName() {
+            return name.substring(name.lastIndexOf('.') + 1);
+        }
+
+        private String childName(String simpleName) {
+            return name.isEmpty() ? simpleName : name + "." + simpleName;
+        }
+
+        private Page child(String simpleName) {
+            File file = new File(dir, simpleName + ".wiki");
+            File childDir = new File(dir, simpleName);
+            if (file.isFile() || childDir.isDirectory()) {
+                return new Page(childName(simpleName), childDir, readProperties(file));
+            }
+            String link = links().get(simpleName);
+            if (link != null) {
+                Page target = resolveLink(link, this);
+                if (target != null) {
+                    return new Page(childName(simpleName), target.dir, target.properties);
+                }
+            }
+            return null;
+        }
+
+        private Map<String, String> links() {
+            Map<String, String> links = new LinkedHashMap<>();
+            String value = properties.get("SymbolicLinks");
+            if (value != null) {
+                for (String line : value.split("\n")) {
+                    Matcher m = LINK.matcher(line);
+                    if (m.matches()) {
+                        links.put(m.group(1), m.group(2));
+                    }
+                }
+            }
+            return links;
+        }
+
+        private List<Page> children() {
+            List<String> names = new ArrayList<>();
+            File[] files = dir.listFiles();
+            if (files != null) {
+                for (File file : files) {
+                    String fileName = file.getName();
+                    if (file.isFile() && fileName.endsWith(".wiki")) {
+                        names.add(fileName.substring(0, fileName.length() - ".wiki".length()));
+                    } else if (file.isDirectory() && !new File(dir, fileName + ".wiki").isFile()) {
+                        names.add(fileName);
+                    }
+                }
+            }
+            names.addAll(links().keySet());
+            Collections.sort(names);
+
+            List<Page> children = new ArrayList<>();
+            for (String childName : names) {
+                if (!SPECIAL_PAGES.contains(childName)) {
+                    Page child = child(childName);
+                    if (child != null && !child.properties.containsKey("Prune")
+                            && (child.properties.containsKey("Suite") || child.properties.containsKey("Test"))) {
+                        children.add(child);
+                    }
+                }
+            }
+            return children;
+        }
+    }
+
+    /**
+     * Reads the properties from the front matter of a page file. Properties without value (like Suite or Test)
+     * get an empty value, properties with value 'no' are left out. Indented lines are added to the value
+     * of the property they follow (as for SymbolicLinks).
+     */
+    private static Map<String, String> readProperties(File file) {
+        Map<String, String> properties = new LinkedHashMap<>();
+        if (!file.isFile()) {
+            return properties;
+        }
+        List<String> lines;
+        try {
+            lines = Files.readAllLines(file.toPath(), StandardCharsets.UTF_8);
+        } catch (IOException e) {
+            throw new IllegalStateException("Unable to read: " + file, e);
+        }
+        if (lines.isEmpty() || !"---".equals(lines.get(0).trim())) {
+            return properties;
+        }
+        String current = null;
+        for (String line : lines.subList(1, lines.size())) {
+            if ("---".equals(line.trim())) {
+                break;
+            }
+            if (line.isEmpty()) {
+                continue;
+            }
+            if (current != null && Character.isWhitespace(line.charAt(0))) {
+                properties.put(current, properties.get(current) + "\n" + line);
+            } else {
+                int colon = line.indexOf(':');
+                current = (colon < 0 ? line : line.substring(0, colon)).trim();
+                String value = colon < 0 ? "" : line.substring(colon + 1).trim();
+                if ("no".equalsIgnoreCase(value)) {
+                    current = null;
+                } else {
+                    properties.put(current, value);
+                }
+            }
+        }
+        return properties;
+    }
+}
@@ -0,0 +1,655 @@
+package nl.specialisterren.fitnesse.junit;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Index of what the wiki pages and fixtures depend on, used by {@link ChangeImpact} to select the pages affected by
+ * a change. Per file it records:
+ * <ul>
+ *     <li>wiki pages: the pages they include, and per table the scenario it defines (if any), the scenarios and
+ *     fixture methods its rows call and the fixtures it uses, with the table's lines</li>
+ *     <li>Java sources (src/main/java): the class, its superclass and per member (method, field or nested class) its
+ *     lines and the identifiers and file names it refers to</li>
+ *     <li>resources (src/main/resources): only that they exist</li>
+ * </ul>
+ * Names of scenarios, fixtures and methods are stored like FitNesse matches them: without spaces and punctuation,
+ * and in lower case. A wiki variable in a called name is stored as '*'.
+ * <p>
+ * The index is stored in a file and updated incrementally: only files whose size or modification time changed are
+ * read again.
+ * </p>
+ */
+public class WikiDependencyIndexer {
+    private static final String FORMAT = "# wiki-dependency-index 1";
+    private static final String WIKI_ROOT = "wiki/FitNesseRoot";
+    private static final String JAVA_ROOT = "src/main/java";
+    private static final String RESOURCES_ROOT = "src/main/resources";
+
+    private static final Pattern TABLE_ROW = Pattern.compile("^\\s*-?!?\\|(.*)$");
+    private static final Pattern INCLUDE = Pattern.compile("!include\\s+(?:-\\w+\\s+)*([<>.]?[\\w.]+)");
+    private static final Pattern WIKI_VARIABLE = Pattern.compile("\\$\\{[^}]*}");
+    private static final List<String> ROW_KEYWORDS = Arrays.asList("check", "checknot", "ensure", "reject", "show");
+    private static final List<String> FIXTURE_PREFIXES = Arrays.asList("ddt:", "dt:", "decision:", "table:", "query:",
+            "subset query:", "ordered query:", "baseline:");
+    private static final List<String> IGNORED_TABLES = Arrays.asList("comment", "import", "define table type",
+            "define alias");
+
+    private static final Pattern TYPE_DECLARATION = Pattern.compile(
+            "\\b(?:class|interface|enum)\\s+(\\w+)(?:\\s*<[^{]*?>)?(?:\\s+extends\\s+([\\w.]+))?");
+    private static final Pattern IMPORT = Pattern.compile("^\\s*(?:package|import)\\b[^;]*;", Pattern.MULTILINE);
+    private static final Pattern ANNOTATION = Pattern.compile("@[\\w.]+(?:\\s*\\([^)]*\\))?");
+    private static final Pattern IDENTIFIER = Pattern.compile("[A-Za-z_$][\\w$]*");
+    private static final Pattern FILE_NAME = Pattern.compile("[\\w-]+\\.[A-Za-z]\\w*");
+    private static final Set<String> JAVA_KEYWORDS = new HashSet<>(Arrays.asList("abstract", "boolean", "break",
+            "byte", "case", "catch", "char", "class", "continue", "default", "do", "double", "else", "enum", "extends",
+            "false", "final", "finally", "float", "for", "if", "implements", "import", "instanceof", "int",
+            "interface", "long", "new", "null", "private", "protected", "public", "return", "short", "static",
+            "super", "switch", "synchronized", "this", "throw", "throws", "true", "try", "void", "volatile", "while"));
+
+    private final File projectDir;
+    private final File indexFile;
+    private final Map<String, Entry> entries = new TreeMap<>();
+
+    /**
+     * @param projectDir directory containing the wiki and the fixture sources (the paths in the index, and those
+     *                   reported by git, are relative to it).
+     * @param indexFile file the index is stored in.
+     */
+    public WikiDependencyIndexer(File projectDir, File indexFile) {
+        this.projectDir = projectDir;
+        this.indexFile = indexFile;
+    }
+
+    /**
+     * Loads the stored index (if any), reads the files that were added or changed since, and stores the result.
+     * @return number of files that were (re)indexed.
+     */
+    public int update() throws IOException {
+        load();
+        Map<String, File> files = new TreeMap<>();
+        collect(new File(projectDir, WIKI_ROOT), WIKI_ROOT, files);
+        collect(new File(projectDir, JAVA_ROOT), JAVA_ROOT, files);
+        collect(new File(projectDir, RESOURCES_ROOT), RESOURCES_ROOT, files);
+
+        entries.keySet().retainAll(files.keySet());
+        int indexed = 0;
+        for (Map.Entry<String, File> file : files.entrySet()) {
+            Entry entry = entries.get(file.getKey());
+            File f = file.getValue();
+            if (entry == null || entry.modified != f.lastModified() || entry.size != f.length()) {
+                entries.put(file.getKey(), read(file.getKey(), f));
+                indexed++;
+            }
+        }
+        if (indexed > 0 || !indexFile.isFile()) {
+            save();
+        }
+        return indexed;
+    }
+
+    Map<String, Entry> entries() {
+        return Collections.unmodifiableMap(entries);
+    }
+
+    File getProjectDir() {
+        return projectDir;
+    }
+
+    private void collect(File dir, String path, Map<String, File> files) {
+        File[] children = dir.listFiles();
+        if (children == null) {
+            return;
+        }
+        for (File child : children) {
+            String childPath = path + "/" + child.getName();
+            if (child.isDirectory()) {
+                // attachments, templates and the like
+                if (!childPath.equals(WIKI_ROOT + "/files")) {
+                    collect(child, childPath, files);
+                }
+            } else if (!path.startsWith(WIKI_ROOT) || child.getName().endsWith(".wiki")) {
+                files.put(childPath, child);
+            }
+        }
+    }
+
+    private Entry read(String path, File file) throws IOException {
+        Entry entry = new Entry(file.lastModified(), file.length());
+        if (path.startsWith(WIKI_ROOT)) {
+            entry.kind = Kind.WIKI;
+            parseWiki(entry, Files.readAllLines(file.toPath(), StandardCharsets.UTF_8));
+        } else if (path.startsWith(JAVA_ROOT) && path.endsWith(".java")) {
+            entry.kind = Kind.JAVA;
+            parseJava(entry, new String(Files.readAllBytes(file.toPath()), StandardCharsets.UTF_8));
+        } else {
+            entry.kind = Kind.RESOURCE;
+        }
+        return entry;
+    }
+
+    enum Kind {
+        WIKI, JAVA, RESOURCE
+    }
+
+    /**
+     * What the index knows of one file. Line numbers start at 1, ranges include their end.
+     */
+    static final class Entry {
+        private final long modified;
+        private final long size;
+        Kind kind;
+        final List<String> includes = new ArrayList<>();
+        final List<Table> tables = new ArrayList<>();
+        String className;
+        String superclass;
+        // last line of the package and import statements
+        int importsEnd;
+        final List<Member> members = new ArrayList<>();
+
+        private Entry(long modified, long size) {
+            this.modified = modified;
+            this.size = size;
+        }
+
+        Table tableAt(int line) {
+            for (Table table : tables) {
+                if (table.start <= line && line <= table.end) {
+                    return table;
+                }
+            }
+            return null;
+        }
+
+        Member memberAt(int line) {
+            for (Member member : members) {
+                if (member.start <= line && line <= member.end) {
+                    return member;
+                }
+            }
+            return null;
+        }
+    }
+
+    static final class Table {
+        // name of the scenario (or table template) the table defines, null for other tables
+        final String scenario;
+        final int start;
+        final int end;
+        final Set<String> calls = new LinkedHashSet<>();
+        final Set<String> fixtures = new LinkedHashSet<>();
+
+        private Table(String scenario, int start, int end) {
+            this.scenario = scenario;
+            this.start = start;
+            this.end = end;
+        }
+    }
+
+    static final class Member {
+        final String name;
+        final int start;
+        final int end;
+        // public members can be called from the wiki
+        final boolean isPublic;
+        final boolean isOverride;
+        final Set<String> references = new LinkedHashSet<>();
+
+        private Member(String name, int start, int end, boolean isPublic, boolean isOverride) {
+            this.name = name;
+            this.start = start;
+            this.end = end;
+            this.isPublic = isPublic;
+            this.isOverride = isOverride;
+        }
+    }
+
+    private static void parseWiki(Entry entry, List<String> lines) {
+        List<List<String>> rows = new ArrayList<>();
+        int start = 0;
+        for (int i = 0; i <= lines.size(); i++) {
+            String line = i < lines.size() ? lines.get(i) : "";
+            Matcher row = TABLE_ROW.matcher(line);
+            if (row.matches()) {
+                if (rows.isEmpty()) {
+                    start = i + 1;
+                }
+                rows.add(cells(row.group(1)));
+                continue;
+            }
+            if (!rows.isEmpty()) {
+                Table table = parseTable(rows, start, i);
+                if (table != null) {
+                    entry.tables.add(table);
+                }
+                rows.clear();
+            }
+            Matcher include = INCLUDE.matcher(line);
+            while (include.find()) {
+                entry.includes.add(include.group(1));
+            }
+        }
+    }
+
+    private static List<String> cells(String row) {
+        String content = row.trim();
+        if (content.endsWith("|")) {
+            content = content.substring(0, content.length() - 1);
+        }
+        List<String> cells = new ArrayList<>();
+        for (String cell : content.split("\\|", -1)) {
+            cells.add(cell.trim());
+        }
+        return cells;
+    }
+
+    private static Table parseTable(List<List<String>> rows, int start, int end) {
+        List<String> header = rows.get(0);
+        String type = header.get(0).toLowerCase(Locale.ROOT).replaceAll("\\s+", " ");
+        if (IGNORED_TABLES.contains(type)) {
+            return null;
+        }
+        List<List<String>> body = rows.subList(1, rows.size());
+        if ("scenario".equals(type) || "table template".equals(type)) {
+            Table table = new Table(scenarioName(header), start, end);
+            addCalls(table, body);
+            return table;
+        }
+        Table table = new Table(null, start, end);
+        if ("script".equals(type) || type.startsWith("script:")) {
+            String fixture = type.startsWith("script:") ? header.get(0).substring("script:".length())
+                    : header.size() > 1 ? header.get(1) : "";
+            addFixture(table, fixture);
+            addCalls(table, body);
+        } else if ("library".equals(type)) {
+            for (List<String> row : body) {
+                addFixture(table, row.get(0));
+            }
+        } else {
+            String fixture = header.get(0);
+            for (String prefix : FIXTURE_PREFIXES) {
+                if (type.startsWith(prefix)) {
+                    fixture = fixture.substring(prefix.length());
+                }
+            }
+            // a decision table, or a scenario (or table template) used as one: the scenario's name may continue
+            // with the names of its parameters
+            addFixture(table, fixture);
+            addCall(table, callName(fixture) + "*");
+            if (!body.isEmpty()) {
+                for (String column : body.get(0)) {
+                    String name = callName(column);
+                    addCall(table, name);
+                    addCall(table, "set" + name);
+                }
+            }
+        }
+        return table;
+    }
+
+    // |scenario|name part|param|name part|param|, or |scenario|name _ part _|param, param|
+    private static String scenarioName(List<String> header) {
+        if (header.size() < 2) {
+            return "";
+        }
+        if (header.get(1).contains("_")) {
+            return callName(header.get(1).replace("_", " "));
+        }
+        StringBuilder name = new StringBuilder();
+        for (int i = 1; i < header.size(); i += 2) {
+            name.append(callName(header.get(i)));
+        }
+        return name.toString();
+    }
+
+    private static void addCalls(Table table, List<List<String>> rows) {
+        for (List<String> row : rows) {
+            int first = 0;
+            int last = row.size();
+            String keyword = callName(row.get(0));
+            if ("note".equals(keyword) || row.get(0).isEmpty() && row.size() == 1) {
+                continue;
+            }
+            if ("start".equals(keyword)) {
+                if (row.size() > 1) {
+                    addFixture(table, row.get(1));
+                }
+                continue;
+            }
+            if (ROW_KEYWORDS.contains(keyword)) {
+                first = 1;
+                if (keyword.startsWith("check")) {
+                    // the expected value
+                    last--;
+                }
+            } else if (row.get(0).endsWith("=")) {
+                // $symbol= assignment
+                first = 1;
+            }
+            if (first >= last) {
+                continue;
+            }
+            String cell = row.get(first);
+            if (cell.endsWith(";")) {
+                addCall(table, callName(cell.substring(0, cell.length() - 1)));
+            } else {
+                StringBuilder name = new StringBuilder();
+                for (int i = first; i < last; i += 2) {
+                    name.append(callName(row.get(i)));
+                }
+                addCall(table, name.toString());
+            }
+        }
+    }
+
+    private static void addCall(Table table, String name) {
+        // a name that is only a variable could be anything, it is left out rather than matching everything
+        if (!name.replace("*", "").isEmpty()) {
+            table.calls.add(name);
+        }
+    }
+
+    private static void addFixture(Table table, String name) {
+        String fixture = name.trim();
+        if (fixture.contains(".") && !fixture.contains(" ")) {
+            fixture = fixture.substring(fixture.lastIndexOf('.') + 1);
+        }
+        fixture = callName(fixture);
+        if (!fixture.isEmpty() && !fixture.contains("*")) {
+            table.fixtures.add(fixture);
+        }
+    }
+
+    /**
+     * @return name as FitNesse matches it to methods and scenarios: letters and digits only, in lower case.
+     * Wiki variables (whose value is unknown here) become '*'.
+     */
+    static String callName(String text) {
+        String value = WIKI_VARIABLE.matcher(text).replaceAll("*");
+        StringBuilder name = new StringBuilder();
+        for (char c : value.toCharArray()) {
+            if (Character.isLetterOrDigit(c) || c == '*') {
+                name.append(Character.toLowerCase(c));
+            }
+        }
+        return name.toString();
+    }
+
+    // the members of the (top level) class, with the lines of their preceding comments and annotations
+    private static void parseJava(Entry entry, String source) {
+        List<int[]> literals = new ArrayList<>();
+        String code = stripCommentsAndLiterals(source, literals);
+        Matcher type = TYPE_DECLARATION.matcher(code);
+        if (!type.find()) {
+            return;
+        }
+        entry.className = type.group(1);
+        Matcher imports = IMPORT.matcher(code.substring(0, type.start()));
+        while (imports.find()) {
+            entry.importsEnd = lineOf(code, imports.end());
+        }
+        if (type.group(2) != null) {
+            String superclass = type.group(2);
+            entry.superclass = superclass.substring(superclass.lastIndexOf('.') + 1);
+        }
+        int bodyStart = code.indexOf('{', type.end());
+        if (bodyStart < 0) {
+            return;
+        }
+        int line = lineOf(code, bodyStart);
+        int depth = 1;
+        int memberStart = bodyStart + 1;
+        boolean assignment = false;
+        for (int i = bodyStart + 1; i < code.length() && depth > 0; i++) {
+            char c = code.charAt(i);
+            if (c == '{' || c == '(') {
+                depth++;
+            } else if (c == '}' || c == ')') {
+                depth--;
+                if (c == '}' && depth == 1 && !assignment) {
+                    line = addMember(entry, source, code, literals, memberStart, i + 1, line);
+                    memberStart = i + 1;
+                }
+            } else if (depth == 1 && c == '=') {
+                assignment = true;
+            } else if (depth == 1 && c == ';') {
+                line = addMember(entry, source, code, literals, memberStart, i + 1, line);
+                memberStart = i + 1;
+                assignment = false;
+            }
+        }
+    }
+
+    // returns the line the next member starts after
+    private static int addMember(Entry entry, String source, String code, List<int[]> literals,
+                                 int start, int end, int previousEnd) {
+        String text = code.substring(start, end);
+        String declaration = text;
+        int bodyOrValue = firstIndexOf(declaration, '{', '=', ';');
+        if (bodyOrValue >= 0) {
+            declaration = declaration.substring(0, bodyOrValue);
+        }
+        boolean isOverride = declaration.contains("@Override");
+        declaration = ANNOTATION.matcher(declaration).replaceAll(" ").trim();
+        if (declaration.isEmpty()) {
+            // empty statement, or an initializer block
+            declaration = text.trim().startsWith("static") ? "static" : "";
+            if (declaration.isEmpty()) {
+                return previousEnd;
+            }
+        }
+        String name;
+        int parenthesis = declaration.indexOf('(');
+        Matcher nested = TYPE_DECLARATION.matcher(declaration);
+        if (nested.find()) {
+            name = nested.group(1);
+        } else if (parenthesis >= 0) {
+            name = lastIdentifier(declaration.substring(0, parenthesis));
+        } else {
+            name = lastIdentifier(declaration);
+        }
+        int endLine = lineOf(code, end - 1);
+        Member member = new Member(name, previousEnd + 1, endLine,
+                declaration.matches("(?s).*\\bpublic\\b.*"), isOverride);
+        Matcher identifier = IDENTIFIER.matcher(text);
+        while (identifier.find()) {
+            String reference = identifier.group();
+            if (!JAVA_KEYWORDS.contains(reference) && reference.length() > 1) {
+                member.references.add(reference.toLowerCase(Locale.ROOT));
+            }
+        }
+        for (int[] literal : literals) {
+            if (literal[0] >= start && literal[1] <= end) {
+                Matcher fileName = FILE_NAME.matcher(source.substring(literal[0], literal[1]));
+                while (fileName.find()) {
+                    member.references.add(fileName.group().toLowerCase(Locale.ROOT));
+                }
+            }
+        }
+        entry.members.add(member);
+        return endLine;
+    }
+
+    private static int firstIndexOf(String text, char... chars) {
+        int first = -1;
+        for (char c : chars) {
+            int index = text.indexOf(c);
+            if (index >= 0 && (first < 0 || index < first)) {
+                first = index;
+            }
+        }
+        return first;
+    }
+
+    private static String lastIdentifier(String text) {
+        String name = "";
+        Matcher identifier = IDENTIFIER.matcher(text);
+        while (identifier.find()) {
+            name = identifier.group();
+        }
+        return name;
+    }
+
+    private static int lineOf(String text, int index) {
+        int line = 1;
+        for (int i = 0; i < index; i++) {
+            if (text.charAt(i) == '\n') {
+                line++;
+            }
+        }
+        return line;
+    }
+
+    /**
+     * Replaces comments and the content of string and character literals by spaces (keeping line breaks), so braces
+     * and semicolons in them are not seen as code.
+     * @param literals receives start and end of each string literal's content.
+     */
+    private static String stripCommentsAndLiterals(String source, List<int[]> literals) {
+        StringBuilder code = new StringBuilder(source);
+        int i = 0;
+        while (i < source.length()) {
+            char c = source.charAt(i);
+            int end;
+            if (source.startsWith("//", i)) {
+                end = source.indexOf('\n', i);
+                end = end < 0 ? source.length() : end;
+            } else if (source.startsWith("/*", i)) {
+                end = source.indexOf("*/", i + 2);
+                end = end < 0 ? source.length() : end + 2;
+            } else if (c == '"' || c == '\'') {
+                end = i + 1;
+                while (end < source.length() && source.charAt(end) != c && source.charAt(end) != '\n') {
+                    end += source.charAt(end) == '\\' ? 2 : 1;
+                }
+                if (c == '"') {
+                    literals.add(new int[] {i + 1, Math.min(end, source.length())});
+                }
+                // keep the quotes
+                blank(code, i + 1, end);
+                i = end + 1;
+                continue;
+            } else {
+                i++;
+                continue;
+            }
+            blank(code, i, end);
+            i = end;
+        }
+        return code.toString();
+    }
+
+    private static void blank(StringBuilder code, int start, int end) {
+        for (int i = start; i < Math.min(end, code.length()); i++) {
+            if (code.charAt(i) != '\n') {
+                code.setCharAt(i, ' ');
+            }
+        }
+    }
+
+    private void load() throws IOException {
+        entries.clear();
+        if (!indexFile.isFile()) {
+            return;
+        }
+        List<String> lines = Files.readAllLines(indexFile.toPath(), StandardCharsets.UTF_8);
+        if (lines.isEmpty() || !FORMAT.equals(lines.get(0))) {
+            // other version, index again
+            return;
+        }
+        Entry entry = null;
+        for (String line : lines.subList(1, lines.size())) {
+            String[] fields = line.split("\t", -1);
+            switch (fields[0]) {
+                case "F":
+                    entry = new Entry(Long.parseLong(fields[2]), Long.parseLong(fields[3]));
+                    entry.kind = Kind.valueOf(fields[4]);
+                    entries.put(fields[1], entry);
+                    break;
+                case "I":
+                    entry.includes.add(fields[1]);
+                    break;
+                case "T":
+                    Table table = new Table(fields[1].isEmpty() ? null : fields[1],
+                            Integer.parseInt(fields[2]), Integer.parseInt(fields[3]));
+                    table.calls.addAll(split(fields[4]));
+                    table.fixtures.addAll(split(fields[5]));
+                    entry.tables.add(table);
+                    break;
+                case "C":
+                    entry.className = fields[1];
+                    entry.superclass = fields[2].isEmpty() ? null : fields[2];
+                    entry.importsEnd = Integer.parseInt(fields[3]);
+                    break;
+                case "M":
+                    Member member = new Member(fields[1], Integer.parseInt(fields[2]), Integer.parseInt(fields[3]),
+                            fields[4].contains("p"), fields[4].contains("o"));
+                    member.references.addAll(split(fields[5]));
+                    entry.members.add(member);
+                    break;
+                default:
+                    throw new IllegalStateException("Unable to read index " + indexFile + ", line: " + line);
+            }
+        }
+    }
+
+    private static List<String> split(String value) {
+        return value.isEmpty() ? Collections.emptyList() : Arrays.asList(value.split(","));
+    }
+
+    private void save() throws IOException {
+        File dir = indexFile.getAbsoluteFile().getParentFile();
+        if (dir != null) {
+            dir.mkdirs();
+        }
+        try (BufferedWriter out = Files.newBufferedWriter(indexFile.toPath(), StandardCharsets.UTF_8)) {
+            out.write(FORMAT);
+            out.newLine();
+            for (Map.Entry<String, Entry> file : entries.entrySet()) {
+                Entry entry = file.getValue();
+                write(out, "F", file.getKey(), entry.modified, entry.size, entry.kind);
+                for (String include : entry.includes) {
+                    write(out, "I", include);
+                }
+                for (Table table : entry.tables) {
+                    write(out, "T", table.scenario == null ? "" : table.scenario, table.start, table.end,
+                            String.join(",", table.calls), String.join(",", table.fixtures));
+                }
+                if (entry.className != null) {
+                    write(out, "C", entry.className, entry.superclass == null ? "" : entry.superclass,
+                            entry.importsEnd);
+                }
+                for (Member member : entry.members) {
+                    write(out, "M", member.name, member.start, member.end,
+                            (member.isPublic ? "p" : "") + (member.isOverride ? "o" : ""),
+                            String.join(",", member.references));
+                }
+            }
+        }
+    }
+
+    private static void write(BufferedWriter out, Object... fields) throws IOException {
+        for (int i = 0; i < fields.length; i++) {
+            if (i > 0) {
+                out.write('\t');
+            }
+            out.write(String.valueOf(fields[i]));
+        }
+        out.newLine();
+    }
+}
@@ -0,0 +1,168 @@
+package nl.specialisterren.fitnesse.junit;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Checks what WikiDependencyIndexer records for wiki pages and fixture sources, and that it is stored and
+ * updated incrementally.
+ */
+public class WikiDependencyIndexerTest {
+    private static final String PAGE = "wiki/FitNesseRoot/Shop/LoginTest.wiki";
+    private static final String FIXTURE = "src/main/java/shop/ShopFixture.java";
+
+    private File project;
+    private WikiDependencyIndexer index;
+
+    @Before
+    public void createProject() throws IOException {
+        project = Files.createTempDirectory("wiki-dependency-index").toFile();
+        write(PAGE,
+                "---",
+                "Test",
+                "---",
+                "!include -seamless <Shop.LogIn",
+                "",
+                "|scenario|search for _ in _|term, category|",
+                "|enter|@term|as|query|",
+                "|search in ${CATEGORY}|",
+                "",
+                "|script|shop fixture|",
+                "|search for|shoes|in|men|",
+                "|check|basket size|0|",
+                "|$total=|total price|",
+                "|note|not a call|",
+                "",
+                "|comment|",
+                "|not|a call|");
+        write(FIXTURE,
+                "package shop;",
+                "",
+                "import java.util.List;",
+                "",
+                "/**",
+                " * Uses prices.json.",
+                " */",
+                "public class ShopFixture extends base.BaseFixture {",
+                "    private int size = 0;",
+                "",
+                "    public int basketSize() {",
+                "        return count(); // not a '}'",
+                "    }",
+                "",
+                "    @Override",
+                "    protected String name() {",
+                "        return \"prices.json\";",
+                "    }",
+                "",
+                "    private int count() {",
+                "        return size;",
+                "    }",
+                "}");
+        write("src/main/resources/prices.json", "{}");
+        index = new WikiDependencyIndexer(project, new File(project, "target/index"));
+    }
+
+    @After
+    public void deleteProject() throws IOException {
+        delete(project);
+    }
+
+    @Test
+    public void recordsIncludesScenariosCallsAndFixtures() throws IOException {
+        index.update();
+        WikiDependencyIndexer.Entry page = index.entries().get(PAGE);
+        assertEquals(WikiDependencyIndexer.Kind.WIKI, page.kind);
+        assertEquals(Collections.singletonList("<Shop.LogIn"), page.includes);
+        assertEquals(2, page.tables.size());
+
+        WikiDependencyIndexer.Table scenario = page.tables.get(0);
+        assertEquals("searchforin", scenario.scenario);
+        assertEquals(6, scenario.start);
+        assertEquals(8, scenario.end);
+        assertEquals(new LinkedHashSet<>(Arrays.asList("enteras", "searchin*")), scenario.calls);
+
+        WikiDependencyIndexer.Table script = page.tables.get(1);
+        assertNull(script.scenario);
+        assertEquals(Collections.singleton("shopfixture"), script.fixtures);
+        assertEquals(new LinkedHashSet<>(Arrays.asList("searchforin", "basketsize", "totalprice")), script.calls);
+        assertEquals(script, page.tableAt(12));
+        assertNull(page.tableAt(9));
+    }
+
+    @Test
+    public void recordsClassMembersAndTheirReferences() throws IOException {
+        index.update();
+        WikiDependencyIndexer.Entry fixture = index.entries().get(FIXTURE);
+        assertEquals(WikiDependencyIndexer.Kind.JAVA, fixture.kind);
+        assertEquals("ShopFixture", fixture.className);
+        assertEquals("BaseFixture", fixture.superclass);
+        assertEquals(3, fixture.importsEnd);
+        assertEquals(4, fixture.members.size());
+
+        WikiDependencyIndexer.Member basketSize = fixture.memberAt(12);
+        assertEquals("basketSize", basketSize.name);
+        assertEquals(10, basketSize.start);
+        assertEquals(13, basketSize.end);
+        assertTrue(basketSize.isPublic);
+        assertTrue(basketSize.references.contains("count"));
+
+        WikiDependencyIndexer.Member name = fixture.memberAt(16);
+        assertEquals("name", name.name);
+        assertFalse(name.isPublic);
+        assertTrue(name.isOverride);
+        // file names in string literals, not in comments
+        assertTrue(name.references.contains("prices.json"));
+        assertFalse(fixture.memberAt(9).references.contains("prices.json"));
+
+        assertEquals(WikiDependencyIndexer.Kind.RESOURCE, index.entries().get("src/main/resources/prices.json").kind);
+    }
+
+    @Test
+    public void onlyReadsChangedFilesAgain() throws IOException {
+        assertEquals(3, index.update());
+
+        WikiDependencyIndexer reloaded = new WikiDependencyIndexer(project, new File(project, "target/index"));
+        assertEquals(0, reloaded.update());
+        WikiDependencyIndexer.Entry fixture = reloaded.entries().get(FIXTURE);
+        assertEquals("BaseFixture", fixture.superclass);
+        assertEquals(4, fixture.members.size());
+        assertTrue(fixture.memberAt(16).isOverride);
+        assertEquals("searchforin", reloaded.entries().get(PAGE).tables.get(0).scenario);
+
+        write("wiki/FitNesseRoot/Shop/SearchTest.wiki", "|script|shop fixture|");
+        new File(project, "src/main/resources/prices.json").delete();
+        assertEquals(1, reloaded.update());
+        assertNull(reloaded.entries().get("src/main/resources/prices.json"));
+    }
+
+    private void write(String path, String... lines) throws IOException {
+        File file = new File(project, path);
+        file.getParentFile().mkdirs();
+        Files.write(file.toPath(), Arrays.asList(lines), StandardCharsets.UTF_8);
+    }
+
+    private static void delete(File file) throws IOException {
+        File[] children = file.listFiles();
+        if (children != null) {
+            for (File child : children) {
+                delete(child);
+            }
+        }
+        Files.deleteIfExists(file.toPath());
+    }
+}